@@ -0,0 +1,22 @@
+package com.kodgemisi.specification;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Class that holds a nested builder created by {@link GenericSpecificationBuilder#anyOf}, {@link GenericSpecificationBuilder#allOf}
+ * or {@link GenericSpecificationBuilder#not} together with how it's combined with the enclosing builder
+ *
+ * @param <E>
+ */
+@Getter
+@AllArgsConstructor
+class CriteriaGroup<E> {
+
+	private final GenericSpecificationBuilder<E> builder;
+
+	private final ConditionType conditionType;
+
+	private final boolean negated;
+
+}
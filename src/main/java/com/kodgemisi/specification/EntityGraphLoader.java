@@ -0,0 +1,342 @@
+package com.kodgemisi.specification;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.util.ReflectionUtils;
+
+import javax.persistence.EntityGraph;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.Subgraph;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Fetch;
+import javax.persistence.criteria.FetchParent;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.Bindable;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.ManagedType;
+import javax.persistence.metamodel.Metamodel;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * <p>
+ * Loads the relations given by {@link GenericSpecificationBuilder#fetchGraph(String...)} and {@link GenericSpecificationBuilder#loadGraph(String...)}.
+ * Providers fetch every node of an entity graph by an outer join, hence only to-one relations are put into the entity graph of the query.
+ * Collections are loaded after the query by a single query per collection for all of the loaded owners, similar to subselect fetching,
+ * so that rows aren't multiplied, the query doesn't need distinct and pagination is still done by the database.
+ * </p>
+ *
+ * Entity graphs are registered to the {@link javax.persistence.EntityManagerFactory} as named entity graphs,
+ * so they are created once per entity class and attribute paths and live as long as the factory.
+ * Collections are initialized through the persistence context, hence the results should still be managed,
+ * i.e. a transaction is required in case of a shared EntityManager which is closed after each query out of a transaction.
+ *
+ * @param <E> entity type
+ */
+final class EntityGraphLoader<E> {
+
+	// kept below the IN list limit of databases like Oracle
+	private static final int OWNER_CHUNK_SIZE = 500;
+
+	private static final String GRAPH_NAME_PREFIX = EntityGraphLoader.class.getName() + ":";
+
+	private final EntityManager entityManager;
+
+	private final Class<E> domainClass;
+
+	private final GenericSpecificationContainer<E> container;
+
+	private final Map<String, Node> nodes;
+
+	// sorted paths of the nodes which are put into the entity graph of the query
+	private final Set<String> graphPaths;
+
+	private EntityGraphLoader(EntityManager entityManager, Class<E> domainClass, GenericSpecificationContainer<E> container) {
+		this.entityManager = entityManager;
+		this.domainClass = domainClass;
+		this.container = container;
+		this.nodes = new LinkedHashMap<>();
+		this.graphPaths = new TreeSet<>();
+
+		final Metamodel metamodel = entityManager.getMetamodel();
+		for (String attributePath : container.getEntityGraphPaths()) {
+			addPath(metamodel, attributePath);
+		}
+	}
+
+	/**
+	 * @return loader of the entity graph of the given specification, {@code null} in case it has no entity graph
+	 * @throws IllegalArgumentException in case an attribute path doesn't exist
+	 */
+	static <E> EntityGraphLoader<E> of(EntityManager entityManager, Class<E> domainClass, Specification<E> specification) {
+		if (!(specification instanceof GenericSpecificationContainer) || !((GenericSpecificationContainer<E>) specification).hasEntityGraph()) {
+			return null;
+		}
+		return new EntityGraphLoader<>(entityManager, domainClass, (GenericSpecificationContainer<E>) specification);
+	}
+
+	private void addPath(Metamodel metamodel, String attributePath) {
+		ManagedType<?> managedType = metamodel.managedType(domainClass);
+		Map<String, Node> level = nodes;
+		final List<String> graphPath = new ArrayList<>();
+		final List<Node> pathNodes = new ArrayList<>();
+		int lastCollectionIndex = -1;
+
+		for (String attributeName : attributePath.split("\\.")) {
+			if (managedType == null) {
+				throw new IllegalArgumentException("'" + attributePath + "' is not a valid attribute path of " + domainClass.getSimpleName() + ".");
+			}
+			final Attribute<?, ?> attribute = managedType.getAttribute(attributeName);
+			final Node node = level.computeIfAbsent(attributeName, key -> new Node(attribute));
+
+			if (attribute.isCollection()) {
+				lastCollectionIndex = pathNodes.size();
+			}
+			else if (lastCollectionIndex < 0) {
+				graphPath.add(attributeName);
+			}
+			pathNodes.add(node);
+
+			final Class<?> targetType = node.getTargetType();
+			managedType = attribute.isAssociation() || attribute.getPersistentAttributeType() == Attribute.PersistentAttributeType.EMBEDDED ?
+					metamodel.managedType(targetType) : null;
+			level = node.children;
+		}
+
+		for (int i = 0; i <= lastCollectionIndex; i++) {
+			pathNodes.get(i).containsCollection = true;
+		}
+		if (!graphPath.isEmpty()) {
+			graphPaths.add(String.join(".", graphPath));
+		}
+	}
+
+	/**
+	 * Sets the entity graph of to-one relations to the given query
+	 */
+	void applyTo(TypedQuery<E> query) {
+		if (!graphPaths.isEmpty()) {
+			query.setHint(container.getEntityGraphType().getKey(), getEntityGraph());
+		}
+	}
+
+	/**
+	 * Loads the collections of the given results, which are loaded by a query the entity graph is applied to
+	 *
+	 * @throws IllegalStateException in case there are collections to load but the results aren't managed anymore,
+	 *                               e.g. a shared EntityManager is used out of a transaction
+	 */
+	void load(List<E> results) {
+		if (results.isEmpty() || !hasCollections()) {
+			return;
+		}
+		if (!entityManager.contains(results.get(0))) {
+			// the queries would initialize the collections of other instances, leaving the ones of the results uninitialized
+			throw new IllegalStateException("Collections of an entity graph can only be loaded while the results are managed, "
+													+ "use a transaction in case of a shared EntityManager.");
+		}
+		loadCollections(domainClass, results, nodes);
+	}
+
+	private boolean hasCollections() {
+		for (Node node : nodes.values()) {
+			if (node.containsCollection) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@SuppressWarnings("unchecked")
+	private EntityGraph<E> getEntityGraph() {
+		final String graphName = GRAPH_NAME_PREFIX + domainClass.getName() + graphPaths;
+		try {
+			return (EntityGraph<E>) entityManager.getEntityGraph(graphName);
+		}
+		catch (IllegalArgumentException e) {
+			// not created yet, registering the same graph concurrently is harmless
+			final EntityGraph<E> entityGraph = entityManager.createEntityGraph(domainClass);
+			addAttributeNodes(entityGraph, nodes);
+			entityManager.getEntityManagerFactory().addNamedEntityGraph(graphName, entityGraph);
+			return entityGraph;
+		}
+	}
+
+	private static void addAttributeNodes(EntityGraph<?> entityGraph, Map<String, Node> nodes) {
+		for (Node node : nodes.values()) {
+			if (node.attribute.isCollection()) {
+				continue;
+			}
+			if (node.hasGraphChildren()) {
+				addAttributeNodes(entityGraph.addSubgraph(node.attribute.getName()), node.children);
+			}
+			else {
+				entityGraph.addAttributeNodes(node.attribute.getName());
+			}
+		}
+	}
+
+	private static void addAttributeNodes(Subgraph<?> subgraph, Map<String, Node> nodes) {
+		for (Node node : nodes.values()) {
+			if (node.attribute.isCollection()) {
+				continue;
+			}
+			if (node.hasGraphChildren()) {
+				addAttributeNodes(subgraph.addSubgraph(node.attribute.getName()), node.children);
+			}
+			else {
+				subgraph.addAttributeNodes(node.attribute.getName());
+			}
+		}
+	}
+
+	private void loadCollections(Class<?> ownerClass, List<?> owners, Map<String, Node> nodes) {
+		for (Node node : nodes.values()) {
+			if (!node.containsCollection) {
+				continue;
+			}
+
+			if (node.attribute.isCollection()) {
+				fetchCollection(ownerClass, owners, node);
+			}
+			if (node.hasCollectionChildren()) {
+				final List<Object> values = readValues(owners, node.attribute);
+				if (!values.isEmpty()) {
+					loadCollections(node.getTargetType(), values, node.children);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Fetches the collection of the given node for all of the given owners, the owners are already managed
+	 * so the query initializes their collections. To-one relations of the elements are fetched by the same query.
+	 */
+	private <O> void fetchCollection(Class<O> ownerClass, List<?> owners, Node node) {
+		final EntityType<O> ownerType = entityManager.getMetamodel().entity(ownerClass);
+		if (!ownerType.hasSingleIdAttribute()) {
+			throw new IllegalArgumentException("Collections of entities without a single id attribute can't be loaded by an entity graph.");
+		}
+		final String idAttributeName = ownerType.getId(ownerType.getIdType().getJavaType()).getName();
+
+		final PersistenceUnitUtil persistenceUnitUtil = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+		final Set<Object> idSet = new LinkedHashSet<>();
+		for (Object owner : owners) {
+			idSet.add(persistenceUnitUtil.getIdentifier(owner));
+		}
+
+		final List<Object> ids = new ArrayList<>(idSet);
+		final CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		for (int i = 0; i < ids.size(); i += OWNER_CHUNK_SIZE) {
+			final CriteriaQuery<O> query = criteriaBuilder.createQuery(ownerClass);
+			final Root<O> root = query.from(ownerClass);
+			fetchToOneRelations(root.fetch(node.attribute.getName(), JoinType.LEFT), node.children);
+			query.select(root).where(root.get(idAttributeName).in(ids.subList(i, Math.min(i + OWNER_CHUNK_SIZE, ids.size()))));
+
+			final TypedQuery<O> typedQuery = entityManager.createQuery(query);
+			GenericSpecificationExecutor.applySpecification(typedQuery, container);
+			typedQuery.getResultList();
+		}
+	}
+
+	private static void fetchToOneRelations(FetchParent<?, ?> fetchParent, Map<String, Node> nodes) {
+		for (Node node : nodes.values()) {
+			if (node.attribute.isAssociation() && !node.attribute.isCollection()) {
+				final Fetch<?, ?> fetch = fetchParent.fetch(node.attribute.getName(), JoinType.LEFT);
+				fetchToOneRelations(fetch, node.children);
+			}
+		}
+	}
+
+	/**
+	 * @return distinct values of the given attribute of the owners, elements in case of collections
+	 */
+	private static List<Object> readValues(List<?> owners, Attribute<?, ?> attribute) {
+		final Set<Object> values = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (Object owner : owners) {
+			final Object value = read(owner, attribute);
+			if (value instanceof Collection) {
+				values.addAll((Collection<?>) value);
+			}
+			else if (value instanceof Map) {
+				values.addAll(((Map<?, ?>) value).values());
+			}
+			else if (value != null) {
+				values.add(value);
+			}
+		}
+		return new ArrayList<>(values);
+	}
+
+	/**
+	 * Reads by the getter if there is one since fields of proxies aren't initialized
+	 */
+	private static Object read(Object owner, Attribute<?, ?> attribute) {
+		final PropertyDescriptor propertyDescriptor = BeanUtils.getPropertyDescriptor(owner.getClass(), attribute.getName());
+		if (propertyDescriptor != null && propertyDescriptor.getReadMethod() != null) {
+			return ReflectionUtils.invokeMethod(propertyDescriptor.getReadMethod(), owner);
+		}
+
+		final Member member = attribute.getJavaMember();
+		if (member instanceof Method) {
+			ReflectionUtils.makeAccessible((Method) member);
+			return ReflectionUtils.invokeMethod((Method) member, owner);
+		}
+		ReflectionUtils.makeAccessible((Field) member);
+		return ReflectionUtils.getField((Field) member, owner);
+	}
+
+	private static final class Node {
+
+		private final Attribute<?, ?> attribute;
+
+		private final Map<String, Node> children;
+
+		// whether this node or any of its descendants is a collection
+		private boolean containsCollection;
+
+		private Node(Attribute<?, ?> attribute) {
+			this.attribute = attribute;
+			this.children = new LinkedHashMap<>();
+		}
+
+		private Class<?> getTargetType() {
+			return ((Bindable<?>) attribute).getBindableJavaType();
+		}
+
+		private boolean hasCollectionChildren() {
+			for (Node child : children.values()) {
+				if (child.containsCollection) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private boolean hasGraphChildren() {
+			for (Node child : children.values()) {
+				if (!child.attribute.isCollection()) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package com.kodgemisi.specification;
+
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.util.ClassUtils;
+
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.ManagedType;
+import javax.persistence.metamodel.Metamodel;
+import javax.persistence.metamodel.PluralAttribute;
+import javax.persistence.metamodel.SingularAttribute;
+import javax.persistence.metamodel.Type;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * Paths of an entity which can be used as a filter together with their types, relation types and converters.
+ * Schema is computed once per entity and {@link Metamodel} and cached, so that request parameters can be validated
+ * and converted without any reflection per request. Schemas are released together with their metamodel, e.g. when
+ * the {@link javax.persistence.EntityManagerFactory} is closed on a redeploy.
+ * </p>
+ *
+ * <p>
+ * Basic attributes of the entity and basic attributes of its direct relations are included, e.g. {@code name} and {@code addresses.city}.
+ * Attributes whose types can't be converted from a {@link String} are left out. Fields allow {@link FilterOperation#indexable()} operations.
+ * </p>
+ *
+ * @param <E> entity type
+ */
+public final class FieldSchema<E> {
+
+	// weak keys since schemas of a metamodel are useless once its EntityManagerFactory is closed
+	private static final Map<Metamodel, ConcurrentMap<Class<?>, FieldSchema<?>>> CACHE = Collections.synchronizedMap(new WeakHashMap<>());
+
+	private final Class<E> entityClass;
+
+	private final Map<String, FilterableField> fields;
+
+	private FieldSchema(Class<E> entityClass, Map<String, FilterableField> fields) {
+		this.entityClass = entityClass;
+		this.fields = Collections.unmodifiableMap(fields);
+	}
+
+	/**
+	 * Returns the cached schema of the given entity, computes it if it's not computed yet
+	 *
+	 * @param metamodel   {@link javax.persistence.EntityManagerFactory#getMetamodel()}
+	 * @param entityClass
+	 * @param <E>
+	 * @return
+	 * @throws IllegalArgumentException in case the given class is not an entity of the metamodel
+	 */
+	@SuppressWarnings("unchecked")
+	public static <E> FieldSchema<E> of(Metamodel metamodel, Class<E> entityClass) {
+		final ConcurrentMap<Class<?>, FieldSchema<?>> schemas = CACHE.computeIfAbsent(metamodel, key -> new ConcurrentHashMap<>());
+		return (FieldSchema<E>) schemas.computeIfAbsent(entityClass, clazz -> compute(metamodel, entityClass));
+	}
+
+	private static <E> FieldSchema<E> compute(Metamodel metamodel, Class<E> entityClass) {
+		final Map<String, FilterableField> fields = new LinkedHashMap<>();
+
+		for (Attribute<? super E, ?> attribute : metamodel.entity(entityClass).getAttributes()) {
+			switch (attribute.getPersistentAttributeType()) {
+			case BASIC:
+				addField(fields, attribute.getName(), attribute.getJavaType(), RelationType.NO_RELATION);
+				break;
+			case MANY_TO_ONE:
+			case ONE_TO_ONE:
+				addRelationFields(fields, attribute.getName(), ((SingularAttribute<?, ?>) attribute).getType(), RelationType.TO_ONE);
+				break;
+			case ONE_TO_MANY:
+			case MANY_TO_MANY:
+				addRelationFields(fields, attribute.getName(), ((PluralAttribute<?, ?, ?>) attribute).getElementType(), RelationType.TO_MANY);
+				break;
+			default:
+				// embedded and element collection attributes can't be resolved by GenericSpecification
+				break;
+			}
+		}
+		return new FieldSchema<>(entityClass, fields);
+	}
+
+	private static void addRelationFields(Map<String, FilterableField> fields, String relationName, Type<?> type, RelationType relationType) {
+		if (!(type instanceof ManagedType)) {
+			return;
+		}
+
+		for (Attribute<?, ?> attribute : ((ManagedType<?>) type).getAttributes()) {
+			if (attribute.getPersistentAttributeType() == Attribute.PersistentAttributeType.BASIC) {
+				addField(fields, relationName + "." + attribute.getName(), attribute.getJavaType(), relationType);
+			}
+		}
+	}
+
+	private static void addField(Map<String, FilterableField> fields, String path, Class<?> javaType, RelationType relationType) {
+		final Class<?> type = ClassUtils.resolvePrimitiveIfNecessary(javaType);
+		final Function<String, ?> converter = converterFor(type);
+		if (converter != null) {
+			fields.put(path, new FilterableField(path, type, relationType, converter, FilterOperation.indexable()));
+		}
+	}
+
+	private static Function<String, ?> converterFor(Class<?> type) {
+		if (type.equals(String.class)) {
+			return Function.identity();
+		}
+		if (type.equals(LocalDate.class)) {
+			return LocalDate::parse;
+		}
+		if (type.equals(LocalDateTime.class)) {
+			return LocalDateTime::parse;
+		}
+		if (type.equals(LocalTime.class)) {
+			return LocalTime::parse;
+		}
+		if (type.equals(Instant.class)) {
+			return Instant::parse;
+		}
+		if (type.equals(OffsetDateTime.class)) {
+			return OffsetDateTime::parse;
+		}
+		if (type.equals(ZonedDateTime.class)) {
+			return ZonedDateTime::parse;
+		}
+		if (type.equals(Date.class)) {
+			return value -> Date.from(Instant.parse(value));
+		}
+
+		// numbers, booleans, enums, UUIDs etc.
+		final ConversionService conversionService = DefaultConversionService.getSharedInstance();
+		if (conversionService.canConvert(String.class, type)) {
+			return value -> conversionService.convert(value, type);
+		}
+		return null;
+	}
+
+	public Class<E> getEntityClass() {
+		return entityClass;
+	}
+
+	public boolean contains(String path) {
+		return fields.containsKey(path);
+	}
+
+	public Set<String> getPaths() {
+		return fields.keySet();
+	}
+
+	FilterableField getField(String path) {
+		return fields.get(path);
+	}
+}
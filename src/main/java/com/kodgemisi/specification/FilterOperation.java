@@ -0,0 +1,45 @@
+package com.kodgemisi.specification;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Operations which can be requested by {@link SpecificationParameterParser} parameters, e.g. {@code age.gte=18}.
+ * Each field allows a set of operations, see {@link SpecificationParameterParser#filterable(String, FilterOperation, FilterOperation...)}.
+ */
+public enum FilterOperation {
+
+	EQ("eq", CriteriaOperation.EQUAL),
+	LIKE("like", CriteriaOperation.LIKE),
+	IN("in", CriteriaOperation.IN),
+	GT("gt", CriteriaOperation.GREATER_THAN),
+	GTE("gte", CriteriaOperation.GREATER_THAN_OR_EQUAL_TO),
+	LT("lt", CriteriaOperation.LESS_THAN),
+	LTE("lte", CriteriaOperation.LESS_THAN_OR_EQUAL_TO),
+	NULL("null", CriteriaOperation.IS_NULL),
+	NOT_NULL("notnull", CriteriaOperation.IS_NOT_NULL);
+
+	/**
+	 * parameter name suffix of the operation
+	 */
+	@Getter
+	private final String suffix;
+
+	@Getter(AccessLevel.PACKAGE)
+	private final CriteriaOperation criteriaOperation;
+
+	FilterOperation(String suffix, CriteriaOperation criteriaOperation) {
+		this.suffix = suffix;
+		this.criteriaOperation = criteriaOperation;
+	}
+
+	/**
+	 * @return operations which can use an index of the field, i.e. all but {@link #LIKE} which is a "contains" search
+	 */
+	public static Set<FilterOperation> indexable() {
+		return EnumSet.complementOf(EnumSet.of(LIKE));
+	}
+}
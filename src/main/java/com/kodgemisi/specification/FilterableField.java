@@ -0,0 +1,40 @@
+package com.kodgemisi.specification;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Class that holds a field path of an entity together with its type, relation type, the converter
+ * which converts request parameters to the type of the field and the operations allowed for the field
+ */
+@Getter
+@AllArgsConstructor
+class FilterableField {
+
+	private final String path;
+
+	private final Class<?> javaType;
+
+	private final RelationType relationType;
+
+	private final Function<String, ?> converter;
+
+	private final Set<FilterOperation> operations;
+
+	boolean isComparable() {
+		return Comparable.class.isAssignableFrom(javaType);
+	}
+
+	FilterableField withConverter(Function<String, ?> converter) {
+		return new FilterableField(path, javaType, relationType, converter, operations);
+	}
+
+	FilterableField withOperations(Set<FilterOperation> operations) {
+		return new FilterableField(path, javaType, relationType, converter, Collections.unmodifiableSet(EnumSet.copyOf(operations)));
+	}
+}
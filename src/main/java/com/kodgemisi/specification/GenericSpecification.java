@@ -1,10 +1,15 @@
 package com.kodgemisi.specification;
 
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
+import lombok.Getter;
 import org.springframework.data.jpa.domain.Specification;
 
 import javax.persistence.criteria.*;
+import java.util.Collection;
 import java.util.IllegalFormatException;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * <p>
@@ -27,10 +32,24 @@ import java.util.IllegalFormatException;
 @AllArgsConstructor
 class GenericSpecification<E, T, C extends Comparable<? super C>> implements Specification<E> {
 
+	/**
+	 * Escape character of like patterns, declared explicitly since some databases don't have a default one
+	 */
+	private static final char LIKE_ESCAPE_CHARACTER = '\\';
+
+	@Getter(AccessLevel.PACKAGE)
 	private final FilterCriteria<T> filterCriteria;
 
 	@Override
 	public Predicate toPredicate(Root<E> root, CriteriaQuery<?> query, CriteriaBuilder criteriaBuilder) {
+		return toPredicate(root, query, criteriaBuilder, null);
+	}
+
+	/**
+	 * @param joins joins of to-many relations shared by the criteria of a group, see {@link PredicateGroupSpecification},
+	 *              {@code null} to join the to-many relation for this criteria only
+	 */
+	Predicate toPredicate(Root<E> root, CriteriaQuery<?> query, CriteriaBuilder criteriaBuilder, Map<String, Join<E, ?>> joins) {
 
 		final CriteriaOperation operation = filterCriteria.getOperation();
 		final String key = filterCriteria.getKey();
@@ -46,8 +65,9 @@ class GenericSpecification<E, T, C extends Comparable<? super C>> implements Spe
 			final Class clazz = query.getResultType();
 			final JoinType joinType = filterCriteria.getJoinType();
 			if (clazz.equals(Long.class) || clazz.equals(long.class)) {
-				// If clazz is long then it's a count query for pageable
+				// If clazz is long then it's a count query for pageable, distinct so that joined rows aren't counted
 				root.join(key, joinType);
+				query.distinct(true);
 				return null;
 			}
 			else {
@@ -57,54 +77,67 @@ class GenericSpecification<E, T, C extends Comparable<? super C>> implements Spe
 			}
 		}
 		case EQUAL: {
-			final Path<?> path = resolvePath(root, filterCriteria.getKey(), filterCriteria.getRelationType());
+			final Path<?> path = resolvePath(root, filterCriteria.getKey(), filterCriteria.getRelationType(), joins);
 			return criteriaBuilder.equal(path, filterCriteria.getValue());
 		}
 		case IS_NULL: {
-			final Path<?> path = resolvePath(root, filterCriteria.getKey(), filterCriteria.getRelationType());
+			final Path<?> path = resolvePath(root, filterCriteria.getKey(), filterCriteria.getRelationType(), joins);
 			return criteriaBuilder.isNull(path);
 		}
 		case IS_NOT_NULL: {
-			final Path<?> path = resolvePath(root, filterCriteria.getKey(), filterCriteria.getRelationType());
+			final Path<?> path = resolvePath(root, filterCriteria.getKey(), filterCriteria.getRelationType(), joins);
 			return criteriaBuilder.isNotNull(path);
 		}
 		case LIKE: {
-			final Path<?> path = resolvePath(root, filterCriteria.getKey(), filterCriteria.getRelationType());
+			final Path<?> path = resolvePath(root, filterCriteria.getKey(), filterCriteria.getRelationType(), joins);
 			if (filterCriteria.isCaseSensitive()) {
-				criteriaBuilder.like(path.as(String.class), "%" + filterCriteria.getValue() + "%");
+				return criteriaBuilder.like(path.as(String.class), "%" + escapeLikeWildcards(String.valueOf(filterCriteria.getValue())) + "%",
+											LIKE_ESCAPE_CHARACTER);
 			}
 			else {
 				return criteriaBuilder.like(criteriaBuilder.lower(path.as(String.class)),
-											"%" + String.valueOf(filterCriteria.getValue()).toLowerCase() + "%");
+											"%" + escapeLikeWildcards(String.valueOf(filterCriteria.getValue()).toLowerCase(Locale.ROOT)) + "%",
+											LIKE_ESCAPE_CHARACTER);
 			}
 		}
 
 		case IN: {
-			final Path<?> path = resolvePath(root, filterCriteria.getKey(), filterCriteria.getRelationType());
-			return path.in(filterCriteria.getValue());
+			final Object value = filterCriteria.getValue();
+			if (value instanceof Collection && ((Collection<?>) value).isEmpty() || value instanceof Object[] && ((Object[]) value).length == 0) {
+				// "IN ()" is invalid SQL, an empty list matches nothing
+				return criteriaBuilder.disjunction();
+			}
+			final Path<?> path = resolvePath(root, filterCriteria.getKey(), filterCriteria.getRelationType(), joins);
+			if (value instanceof Collection) {
+				return path.in((Collection<?>) value);
+			}
+			if (value instanceof Object[]) {
+				return path.in((Object[]) value);
+			}
+			return path.in(value);
 		}
 
 		case GREATER_THAN: {
 			final ComparableFilterCriteria<C> comparableFilterCriteria = getComparableFilterCriteria();
-			final Path<?> path = resolvePath(root, filterCriteria.getKey(), filterCriteria.getRelationType());
+			final Path<?> path = resolvePath(root, filterCriteria.getKey(), filterCriteria.getRelationType(), joins);
 			return criteriaBuilder.greaterThan(path.as(comparableFilterCriteria.getClazz()), comparableFilterCriteria.getValue());
 		}
 
 		case GREATER_THAN_OR_EQUAL_TO: {
 			final ComparableFilterCriteria<C> comparableFilterCriteria = getComparableFilterCriteria();
-			final Path<?> path = resolvePath(root, filterCriteria.getKey(), filterCriteria.getRelationType());
+			final Path<?> path = resolvePath(root, filterCriteria.getKey(), filterCriteria.getRelationType(), joins);
 			return criteriaBuilder.greaterThanOrEqualTo(path.as(comparableFilterCriteria.getClazz()), comparableFilterCriteria.getValue());
 		}
 
 		case LESS_THAN: {
 			final ComparableFilterCriteria<C> comparableFilterCriteria = getComparableFilterCriteria();
-			final Path<?> path = resolvePath(root, filterCriteria.getKey(), filterCriteria.getRelationType());
+			final Path<?> path = resolvePath(root, filterCriteria.getKey(), filterCriteria.getRelationType(), joins);
 			return criteriaBuilder.lessThan(path.as(comparableFilterCriteria.getClazz()), comparableFilterCriteria.getValue());
 		}
 
 		case LESS_THAN_OR_EQUAL_TO: {
 			final ComparableFilterCriteria<C> comparableFilterCriteria = getComparableFilterCriteria();
-			final Path<?> path = resolvePath(root, filterCriteria.getKey(), filterCriteria.getRelationType());
+			final Path<?> path = resolvePath(root, filterCriteria.getKey(), filterCriteria.getRelationType(), joins);
 			return criteriaBuilder.lessThanOrEqualTo(path.as(comparableFilterCriteria.getClazz()), comparableFilterCriteria.getValue());
 		}
 
@@ -120,7 +153,7 @@ class GenericSpecification<E, T, C extends Comparable<? super C>> implements Spe
 		throw new ClassCastException("TODO");//TODO
 	}
 
-	private Path<?> resolvePath(Root<E> root, String key, RelationType relationType) throws IllegalFormatException {
+	private Path<?> resolvePath(Root<E> root, String key, RelationType relationType, Map<String, Join<E, ?>> joins) throws IllegalFormatException {
 		if (relationType.equals(RelationType.NO_RELATION)) {
 			return root.get(key);
 		}
@@ -131,7 +164,7 @@ class GenericSpecification<E, T, C extends Comparable<? super C>> implements Spe
 				return root.get(key);
 			}
 			// throw exception if columns less than or equal to 1
-			final Join<T, ?> joinedTable = root.join(columns[0], JoinType.LEFT);
+			final Join<E, ?> joinedTable = getOrCreateToOneJoin(root, columns[0]);
 			Path<Object> path = joinedTable.get(columns[1]);
 			for (int i = 2; i < columns.length; i++) {
 				path = path.get(columns[i]);
@@ -140,9 +173,37 @@ class GenericSpecification<E, T, C extends Comparable<? super C>> implements Spe
 		}
 		else {
 			final String columns[] = key.split("\\.");
-			final Join<T, ?> joinedTable = root.join(columns[0], JoinType.LEFT);
+			final Join<E, ?> joinedTable = joins == null ?
+					root.join(columns[0], JoinType.LEFT) : joins.computeIfAbsent(columns[0], attributeName -> root.join(attributeName, JoinType.LEFT));
 			return joinedTable.get(columns[1]);
 		}
 	}
 
+	/**
+	 * Reuses the left join of the relation if another criteria of the same query already created it,
+	 * a to-one relation has at most one row so sharing its join doesn't change the result.
+	 * Joins having an ON condition, e.g. created by custom specifications, aren't reused since the condition would restrict the criteria too.
+	 */
+	private Join<E, ?> getOrCreateToOneJoin(Root<E> root, String attributeName) {
+		for (Join<E, ?> join : root.getJoins()) {
+			if (join.getJoinType().equals(JoinType.LEFT) && join.getOn() == null && join.getAttribute().getName().equals(attributeName)) {
+				return join;
+			}
+		}
+		return root.join(attributeName, JoinType.LEFT);
+	}
+
+
+	// values are matched literally, so that a value like "%" can't match everything and a backslash isn't an escape character
+	private static String escapeLikeWildcards(String value) {
+		final StringBuilder escaped = new StringBuilder(value.length() + 4);
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			if (c == '%' || c == '_' || c == LIKE_ESCAPE_CHARACTER) {
+				escaped.append(LIKE_ESCAPE_CHARACTER);
+			}
+			escaped.append(c);
+		}
+		return escaped.toString();
+	}
 }
\ No newline at end of file
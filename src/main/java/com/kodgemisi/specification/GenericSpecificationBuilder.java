@@ -1,10 +1,15 @@
 package com.kodgemisi.specification;
 
+import lombok.AccessLevel;
+import lombok.Getter;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.EntityGraph.EntityGraphType;
 import org.springframework.util.StringUtils;
 
+import javax.persistence.FlushModeType;
 import javax.persistence.criteria.*;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * <p>
@@ -26,23 +31,39 @@ import java.util.*;
  */
 public class GenericSpecificationBuilder<E> {
 
-	private final List<FilterCriteria<?>> filterCriteriaList;
+	// blank like patterns would match anything and empty in values would match nothing
+	private static final Set<CriteriaOperation> DEFAULT_SKIPPED_EMPTY_OPERATIONS = Collections.unmodifiableSet(
+			EnumSet.of(CriteriaOperation.LIKE, CriteriaOperation.IN));
 
-	private final List<Specification<E>> specifications;
+	// collections are allocated on first use since most builders get no or a few criteria
 
-	private final Map<Specification<E>, ConditionType> customSpecifications;
+	private List<FilterCriteria<?>> filterCriteriaList;
 
-	private final List<Map<String, String>> parameters;
+	private Map<Specification<E>, ConditionType> customSpecifications;
+
+	private List<Map<String, String>> parameters;
+
+	private Map<String, Object> hints;
+
+	@Getter(AccessLevel.PACKAGE)
+	private FlushModeType flushMode;
+
+	@Getter(AccessLevel.PACKAGE)
+	private EntityGraphType entityGraphType;
+
+	private List<String> entityGraphPaths;
+
+	private List<CriteriaGroup<E>> criteriaGroups;
 
 	// defaults to AND specification
 	private ConditionType activeConditionType;
 
+	// operations whose criteria with empty values are skipped, replaced instead of modified so that it can be shared
+	private Set<CriteriaOperation> skippedEmptyOperations;
+
 	private GenericSpecificationBuilder() {
-		filterCriteriaList = new ArrayList<>();
-		specifications = new ArrayList<>();
-		parameters = new ArrayList();
 		activeConditionType = ConditionType.AND;
-		customSpecifications = new HashMap<>();
+		skippedEmptyOperations = DEFAULT_SKIPPED_EMPTY_OPERATIONS;
 	}
 
 	/**
@@ -62,20 +83,71 @@ public class GenericSpecificationBuilder<E> {
 		return new GenericSpecificationBuilder<>();
 	}
 
+	boolean hasCustomSpecifications() {
+		return customSpecifications != null;
+	}
+
+	List<FilterCriteria<?>> getFilterCriteriaList() {
+		return filterCriteriaList == null ? Collections.emptyList() : filterCriteriaList;
+	}
+
+	List<CriteriaGroup<E>> getCriteriaGroups() {
+		return criteriaGroups == null ? Collections.emptyList() : criteriaGroups;
+	}
+
+	Map<String, Object> getHints() {
+		return hints == null ? Collections.emptyMap() : hints;
+	}
+
+	List<String> getEntityGraphPaths() {
+		return entityGraphPaths == null ? Collections.emptyList() : entityGraphPaths;
+	}
+
+	private boolean hasNoCriteria() {
+		return filterCriteriaList == null && customSpecifications == null && criteriaGroups == null;
+	}
+
+	private void addFilterCriteria(FilterCriteria<?> filterCriteria) {
+		if (filterCriteriaList == null) {
+			filterCriteriaList = new ArrayList<>();
+		}
+		filterCriteriaList.add(filterCriteria);
+	}
+
+	/**
+	 * Null values are always absent. Blank strings, empty collections and empty arrays are absent if the operation is skipping empty values,
+	 * by default only like and in do, see {@link #skipEmpty(FilterOperation...)}
+	 */
+	private boolean isAbsent(Object value, CriteriaOperation operation) {
+		if (value == null) {
+			return true;
+		}
+		if (!skippedEmptyOperations.contains(operation)) {
+			return false;
+		}
+		if (value instanceof CharSequence) {
+			return !StringUtils.hasText((CharSequence) value);
+		}
+		if (value instanceof Collection) {
+			return ((Collection<?>) value).isEmpty();
+		}
+		return value instanceof Object[] && ((Object[]) value).length == 0;
+	}
+
 	private GenericSpecificationBuilder<E> addCriteria(String key, CriteriaOperation operation) {
-		filterCriteriaList.add(new FilterCriteria<Void>(key, operation, null, Void.class, activeConditionType));
+		addFilterCriteria(new FilterCriteria<Void>(key, operation, null, Void.class, activeConditionType));
 		return this;
 	}
 
 	private GenericSpecificationBuilder<E> addCriteria(String key, CriteriaOperation operation, JoinType joinType) {
-		filterCriteriaList.add(new FilterCriteria<Void>(key, operation, joinType, Void.class, activeConditionType));
+		addFilterCriteria(new FilterCriteria<Void>(key, operation, joinType, Void.class, activeConditionType));
 		return this;
 	}
 
 	@SuppressWarnings("unchecked")
 	private <C> GenericSpecificationBuilder<E> addCriteria(String key, C value, CriteriaOperation operation, RelationType relationType) {
-		if (value != null) {
-			filterCriteriaList.add(new FilterCriteria<>(key, value, operation, (Class<C>) value.getClass(), relationType, activeConditionType));
+		if (!isAbsent(value, operation)) {
+			addFilterCriteria(new FilterCriteria<>(key, value, operation, (Class<C>) value.getClass(), relationType, activeConditionType));
 		}
 		return this;
 	}
@@ -83,12 +155,32 @@ public class GenericSpecificationBuilder<E> {
 	@SuppressWarnings("unchecked")
 	private <C extends Comparable<? super C>> GenericSpecificationBuilder<E> addComparableCriteria(String key, C value, CriteriaOperation operation,
 			RelationType relationType) {
-		if (value != null) {
-			filterCriteriaList.add(new ComparableFilterCriteria<C>(key, value, operation, (Class<C>) value.getClass(), relationType, activeConditionType));
+		if (!isAbsent(value, operation)) {
+			addFilterCriteria(new ComparableFilterCriteria<C>(key, value, operation, (Class<C>) value.getClass(), relationType, activeConditionType));
 		}
 		return this;
 	}
 
+	/**
+	 * Adds a criteria whose operation is decided at runtime, e.g. by {@link com.kodgemisi.specification.SpecificationParameterParser}
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	GenericSpecificationBuilder<E> criteria(String key, Object value, CriteriaOperation operation, RelationType relationType) {
+		switch (operation) {
+		case IS_NULL:
+		case IS_NOT_NULL:
+			addFilterCriteria(new FilterCriteria<Void>(key, null, operation, Void.class, relationType, activeConditionType));
+			return this;
+		case LESS_THAN:
+		case LESS_THAN_OR_EQUAL_TO:
+		case GREATER_THAN:
+		case GREATER_THAN_OR_EQUAL_TO:
+			return addComparableCriteria(key, (Comparable) value, operation, relationType);
+		default:
+			return addCriteria(key, value, operation, relationType);
+		}
+	}
+
 	public GenericSpecificationBuilder<E> or() {
 		activeConditionType = ConditionType.OR;
 		return this;
@@ -99,6 +191,164 @@ public class GenericSpecificationBuilder<E> {
 		return this;
 	}
 
+	/**
+	 * <p>
+	 * Following criteria of every operation are added even if their values are blank strings, empty collections or empty arrays,
+	 * e.g. when an empty selection should match nothing instead of being ignored. An "in" criteria with an empty collection matches nothing.
+	 * For example:
+	 * </p>
+	 * <blockquote><pre>
+	 *     GenericSpecificationBuilder.of(Person.class)
+	 *     	.like("name", name)
+	 *     	.keepEmpty()
+	 *     	.in("department.id", allowedDepartmentIds, RelationType.TO_ONE)
+	 *     	.skipEmpty()
+	 *     	.build();
+	 * </pre></blockquote>
+	 *
+	 * Null values are skipped regardless.
+	 *
+	 * @return
+	 */
+	public GenericSpecificationBuilder<E> keepEmpty() {
+		skippedEmptyOperations = Collections.emptySet();
+		return this;
+	}
+
+	/**
+	 * Following criteria of the given operations are added even if their values are empty, e.g. {@code keepEmpty(FilterOperation.IN)}
+	 * keeps empty "in" values while blank "like" patterns are still skipped.
+	 *
+	 * @param operations
+	 * @return
+	 */
+	public GenericSpecificationBuilder<E> keepEmpty(FilterOperation... operations) {
+		final Set<CriteriaOperation> skipped = skippedEmptyOperations.isEmpty() ?
+				EnumSet.noneOf(CriteriaOperation.class) : EnumSet.copyOf(skippedEmptyOperations);
+		for (FilterOperation operation : operations) {
+			skipped.remove(operation.getCriteriaOperation());
+		}
+		skippedEmptyOperations = skipped;
+		return this;
+	}
+
+	/**
+	 * Following "like" criteria with blank patterns and "in" criteria with empty collections or arrays are skipped as if their values are null,
+	 * which is the default. Empty values of the other operations are added unless {@link #skipEmpty(FilterOperation...)} is used.
+	 *
+	 * @return
+	 */
+	public GenericSpecificationBuilder<E> skipEmpty() {
+		skippedEmptyOperations = DEFAULT_SKIPPED_EMPTY_OPERATIONS;
+		return this;
+	}
+
+	/**
+	 * <p>
+	 * Following criteria of the given operations are skipped as well if their values are blank strings, empty collections or empty arrays.
+	 * For example an empty request parameter can be ignored instead of matching the empty values:
+	 * </p>
+	 * <blockquote><pre>
+	 *     GenericSpecificationBuilder.of(Person.class)
+	 *     	.skipEmpty(FilterOperation.EQ)
+	 *     	.equals("status", status)
+	 *     	.build();
+	 * </pre></blockquote>
+	 *
+	 * @param operations
+	 * @return
+	 */
+	public GenericSpecificationBuilder<E> skipEmpty(FilterOperation... operations) {
+		final Set<CriteriaOperation> skipped = skippedEmptyOperations.isEmpty() ?
+				EnumSet.noneOf(CriteriaOperation.class) : EnumSet.copyOf(skippedEmptyOperations);
+		for (FilterOperation operation : operations) {
+			skipped.add(operation.getCriteriaOperation());
+		}
+		skippedEmptyOperations = skipped;
+		return this;
+	}
+
+	/**
+	 * <p>
+	 * Adds a group of criteria which are combined with OR, the group itself is combined with the enclosing builder
+	 * with respect to the active condition type. For example "(a OR b) AND (c OR d)" can be built like:
+	 * </p>
+	 * <blockquote><pre>
+	 *     GenericSpecificationBuilder.of(Person.class)
+	 *     	.anyOf(b -&gt; b.equals("name", name).equals("surname", name))
+	 *     	.anyOf(b -&gt; b.lessThan("birthDate", minBirthDate).greaterThan("birthDate", maxBirthDate))
+	 *     	.build();
+	 * </pre></blockquote>
+	 *
+	 * Groups can be nested. Criteria of a group on the same to-many relation apply to the same element, e.g. an address which is
+	 * both in the given city and of the given type, whereas criteria outside of the group apply to any element.
+	 * Hints and entity graphs of the nested builder are ignored.
+	 * The nested builder starts with the {@link #skipEmpty()} or {@link #keepEmpty()} mode of the enclosing builder.
+	 *
+	 * @param group adds criteria to the nested builder
+	 * @return
+	 */
+	public GenericSpecificationBuilder<E> anyOf(Consumer<GenericSpecificationBuilder<E>> group) {
+		return addGroup(group, ConditionType.OR, false);
+	}
+
+	/**
+	 * Adds a group of criteria which are combined with AND, see {@link #anyOf(Consumer)}
+	 *
+	 * @param group adds criteria to the nested builder
+	 * @return
+	 */
+	public GenericSpecificationBuilder<E> allOf(Consumer<GenericSpecificationBuilder<E>> group) {
+		return addGroup(group, ConditionType.AND, false);
+	}
+
+	/**
+	 * Adds a negated group of criteria which are combined with AND, see {@link #anyOf(Consumer)}
+	 * <blockquote><pre>
+	 *     GenericSpecificationBuilder.of(Person.class)
+	 *     	.not(b -&gt; b.equals("status", Status.PASSIVE))
+	 *     	.build();
+	 * </pre></blockquote>
+	 *
+	 * A negated group having criteria on a to-many relation matches the entities none of whose elements match the group,
+	 * including the ones without elements, it's rendered as a {@code NOT EXISTS} subquery.
+	 *
+	 * @param group adds criteria to the nested builder
+	 * @return
+	 */
+	public GenericSpecificationBuilder<E> not(Consumer<GenericSpecificationBuilder<E>> group) {
+		return addGroup(group, ConditionType.AND, true);
+	}
+
+	private GenericSpecificationBuilder<E> addGroup(Consumer<GenericSpecificationBuilder<E>> group, ConditionType groupConditionType, boolean negated) {
+		final GenericSpecificationBuilder<E> groupBuilder = new GenericSpecificationBuilder<>();
+		groupBuilder.activeConditionType = groupConditionType;
+		groupBuilder.skippedEmptyOperations = skippedEmptyOperations;
+		group.accept(groupBuilder);
+
+		if (groupBuilder.hasNoCriteria()) {
+			// all values of the group are absent
+			return this;
+		}
+
+		// custom function parameters of the group are bound through the enclosing container
+		if (groupBuilder.parameters != null) {
+			addParameters(groupBuilder.parameters);
+		}
+		if (criteriaGroups == null) {
+			criteriaGroups = new ArrayList<>();
+		}
+		criteriaGroups.add(new CriteriaGroup<>(groupBuilder, activeConditionType, negated));
+		return this;
+	}
+
+	private void addParameters(List<Map<String, String>> parameterMaps) {
+		if (parameters == null) {
+			parameters = new ArrayList<>();
+		}
+		parameters.addAll(parameterMaps);
+	}
+
 	/**
 	 * Adds a new inner join criteria to the filterCriteriaList
 	 *
@@ -141,6 +391,53 @@ public class GenericSpecificationBuilder<E> {
 		return addCriteria(key, CriteriaOperation.JOIN_FETCH, joinType);
 	}
 
+	/**
+	 * <p>
+	 * Loads given relations eagerly by using an entity graph, attributes which are not in the graph are treated as lazy.
+	 * To-one relations are fetched by outer joins of the query. Unlike {@link #joinFetch(String)} collections aren't joined,
+	 * they are loaded after the query by a query per collection for all of the results, so rows aren't multiplied,
+	 * no distinct is needed and pagination is done by the database. Nested relations can be defined by "." delimiter. For example:
+	 * </p>
+	 * <blockquote><pre>
+	 *     GenericSpecificationBuilder.of(Person.class)
+	 *     	.fetchGraph("department", "addresses.city")
+	 *     	.build();
+	 * </pre></blockquote>
+	 *
+	 * Entity graph is applied by {@link com.kodgemisi.specification.GenericSpecificationExecutor}, it's ignored for count queries.
+	 * Entity classes should have getters of the relations which have nested collections, since fields of proxies aren't initialized.
+	 * Collections are loaded through the persistence context of the results, hence a transaction is required when a shared
+	 * EntityManager is used, e.g. Spring's, otherwise {@link IllegalStateException} is thrown.
+	 *
+	 * @param attributePaths attribute paths of relations
+	 * @return
+	 */
+	public GenericSpecificationBuilder<E> fetchGraph(String... attributePaths) {
+		return entityGraph(EntityGraphType.FETCH, attributePaths);
+	}
+
+	/**
+	 * Same as {@link #fetchGraph(String...)} except attributes which are not in the graph are loaded with respect to their mapping.
+	 *
+	 * @param attributePaths attribute paths of relations
+	 * @return
+	 */
+	public GenericSpecificationBuilder<E> loadGraph(String... attributePaths) {
+		return entityGraph(EntityGraphType.LOAD, attributePaths);
+	}
+
+	private GenericSpecificationBuilder<E> entityGraph(EntityGraphType entityGraphType, String... attributePaths) {
+		if (this.entityGraphType != null && this.entityGraphType != entityGraphType) {
+			throw new IllegalStateException("Only one of fetchGraph or loadGraph can be used for a specification.");
+		}
+		this.entityGraphType = entityGraphType;
+		if (entityGraphPaths == null) {
+			entityGraphPaths = new ArrayList<>();
+		}
+		this.entityGraphPaths.addAll(Arrays.asList(attributePaths));
+		return this;
+	}
+
 	/**
 	 * Adds a new "equals" criteria to the filterCriteriaList
 	 * For example:
@@ -178,7 +475,8 @@ public class GenericSpecificationBuilder<E> {
 	}
 
 	/**
-	 * Adds a new "like" criteria to the filterCriteriaList
+	 * Adds a new "like" criteria to the filterCriteriaList which matches the values containing the given value,
+	 * "%", "_" and "\\" are matched literally
 	 * <blockquote><pre>
 	 *     GenericSpecificationBuilder.of(Person.class)
 	 *     	.like("bio", keyword)
@@ -194,7 +492,7 @@ public class GenericSpecificationBuilder<E> {
 	}
 
 	/**
-	 * Adds a new "like" criteria to the filterCriteriaList by joining to given relation
+	 * Adds a new "like" criteria to the filterCriteriaList by joining to given relation, "%", "_" and "\\" are matched literally.
 	 * In order to define a relation, you must use "." delimiter after relation name
 	 * <blockquote><pre>
 	 *     GenericSpecificationBuilder.of(Person.class)
@@ -391,16 +689,19 @@ public class GenericSpecificationBuilder<E> {
 	 * @return
 	 */
 	public GenericSpecificationBuilder<E> custom(Specification<E> specification) {
+		if (customSpecifications == null) {
+			customSpecifications = new HashMap<>();
+		}
 		this.customSpecifications.put(specification, activeConditionType);
 		return this;
 	}
 
 	public GenericSpecificationBuilder<E> customFunction(String functionName, String[] fieldNames, String... params) {
 
-		final int functionIndex = parameters.size();
+		final int functionIndex = parameters == null ? 0 : parameters.size();
 
 		final HashMap<String, String> parameterMap = new HashMap<>();
-		parameters.add(parameterMap);
+		addParameters(Collections.singletonList(parameterMap));
 
 		List<Specification<E>> specifications = new ArrayList<>();
 		for (String fieldName : fieldNames) {
@@ -450,46 +751,162 @@ public class GenericSpecificationBuilder<E> {
 		return this;
 	}
 
+	/**
+	 * Adds a query hint which is applied to the query by {@link com.kodgemisi.specification.GenericSpecificationExecutor}.
+	 * See {@link com.kodgemisi.specification.QueryHintNames} for common hint names.
+	 *
+	 * @param name  hint name
+	 * @param value hint value
+	 * @return
+	 */
+	public GenericSpecificationBuilder<E> hint(String name, Object value) {
+		if (hints == null) {
+			hints = new HashMap<>();
+		}
+		this.hints.put(name, value);
+		return this;
+	}
+
+	/**
+	 * Sets the JDBC fetch size, useful for export-like queries which stream large results
+	 * <blockquote><pre>
+	 *     GenericSpecificationBuilder.of(Person.class)
+	 *     	.equals("status", Status.ACTIVE)
+	 *     	.fetchSize(1000)
+	 *     	.build();
+	 * </pre></blockquote>
+	 *
+	 * @param fetchSize number of rows fetched per database round trip
+	 * @return
+	 */
+	public GenericSpecificationBuilder<E> fetchSize(int fetchSize) {
+		return hint(QueryHintNames.FETCH_SIZE, fetchSize);
+	}
+
+	/**
+	 * Sets the query timeout in milliseconds
+	 *
+	 * @param timeoutInMillis
+	 * @return
+	 */
+	public GenericSpecificationBuilder<E> timeout(int timeoutInMillis) {
+		return hint(QueryHintNames.TIMEOUT, timeoutInMillis);
+	}
+
+	/**
+	 * Marks the loaded entities as read-only so that the persistence context doesn't keep snapshots for dirty checking
+	 *
+	 * @return
+	 */
+	public GenericSpecificationBuilder<E> readOnly() {
+		return hint(QueryHintNames.READ_ONLY, true);
+	}
+
+	/**
+	 * Enables the query cache for the query, second level query cache must be enabled by the provider
+	 *
+	 * @return
+	 */
+	public GenericSpecificationBuilder<E> cacheable() {
+		return hint(QueryHintNames.CACHEABLE, true);
+	}
+
+	/**
+	 * Sets the flush mode of the query, e.g. {@link FlushModeType#COMMIT} avoids flushing the persistence context
+	 * before a query which doesn't depend on the pending changes
+	 *
+	 * @param flushMode
+	 * @return
+	 */
+	public GenericSpecificationBuilder<E> flushMode(FlushModeType flushMode) {
+		this.flushMode = flushMode;
+		return this;
+	}
+
+	/**
+	 * Adds a comment to the generated SQL so that slow query log entries can be matched to the filter caused them.
+	 * Note that Hibernate renders comments only if {@code hibernate.use_sql_comments} is enabled.
+	 *
+	 * @param comment
+	 * @return
+	 */
+	public GenericSpecificationBuilder<E> comment(String comment) {
+		return hint(QueryHintNames.COMMENT, comment);
+	}
+
 	/**
 	 * <p>
 	 * Generates a {@link com.kodgemisi.specification.GenericSpecification} object for each given filter criteria paramater
 	 * by iterating filterCriteriaList then combines them with AND clause
 	 * </p>
 	 *
-	 * @return {@link org.springframework.data.jpa.domain.Specification}
+	 * @return {@link org.springframework.data.jpa.domain.Specification}, the shared {@link GenericSpecificationContainer#matchAll()}
+	 * in case there is no criteria, hint or entity graph, never {@code null} unlike the former versions
 	 */
-	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public Specification<E> build() {
-		if (filterCriteriaList.size() == 0 && customSpecifications.isEmpty()) {
-			return null;
+		if (hasNoCriteria() && hints == null && flushMode == null && entityGraphType == null) {
+			return GenericSpecificationContainer.matchAll();
 		}
 
-		Specification<E> andSpecs = null;
-		Specification<E> orSpecs = null;
-		for (FilterCriteria<?> filterCriteria : filterCriteriaList) {
+		return new GenericSpecificationContainer<E>(toSpecification(), parameters == null ? Collections.emptyList() : parameters,
+													hints == null ? Collections.emptyMap() : new HashMap<>(hints), flushMode, entityGraphType,
+													entityGraphPaths == null ? Collections.emptyList() : new ArrayList<>(entityGraphPaths));
+	}
 
-			final Specification<E> specification = new GenericSpecification(filterCriteria);
-			if (filterCriteria.getConditionType().equals(ConditionType.AND)) {
-				andSpecs = Specification.where(andSpecs).and(specification);
-			}
-			else {
-				orSpecs = Specification.where(orSpecs).or(specification);
-			}
+	/**
+	 * All AND criteria are combined with a single OR group which consists of all OR criteria,
+	 * each combination results in a single n-ary predicate instead of nested binary ones.
+	 *
+	 * @return specification of the builder or {@code null} in case there is no criteria
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	Specification<E> toSpecification() {
+		if (hasNoCriteria()) {
+			return null;
+		}
+
+		final List<Specification<E>> andSpecs = new ArrayList<>();
+		final List<Specification<E>> orSpecs = new ArrayList<>();
+		for (FilterCriteria<?> filterCriteria : getFilterCriteriaList()) {
+			addByConditionType(new GenericSpecification(filterCriteria), filterCriteria.getConditionType(), andSpecs, orSpecs);
 		}
 
 		// iterate over custom specification list
-		for (Map.Entry<Specification<E>, ConditionType> specificationConditionTypeEntry : customSpecifications.entrySet()) {
-			if (specificationConditionTypeEntry.getValue().equals(ConditionType.AND)) {
-				andSpecs = Specification.where(andSpecs).and(specificationConditionTypeEntry.getKey());
+		if (customSpecifications != null) {
+			for (Map.Entry<Specification<E>, ConditionType> specificationConditionTypeEntry : customSpecifications.entrySet()) {
+				addByConditionType(specificationConditionTypeEntry.getKey(), specificationConditionTypeEntry.getValue(), andSpecs, orSpecs);
 			}
-			else {
-				orSpecs = Specification.where(orSpecs).or(specificationConditionTypeEntry.getKey());
+		}
+
+		for (CriteriaGroup<E> criteriaGroup : getCriteriaGroups()) {
+			final Specification<E> groupSpecification = criteriaGroup.getBuilder().toSpecification();
+			if (groupSpecification == null) {
+				// all values of the group are absent
+				continue;
 			}
+			// the group is a join scope, its criteria on the same to-many relation apply to the same element
+			addByConditionType(new PredicateGroupSpecification<>(ConditionType.AND, criteriaGroup.isNegated(), Collections.singletonList(groupSpecification), true),
+							   criteriaGroup.getConditionType(), andSpecs, orSpecs);
 		}
 
-		final Specification<E> specificationResult = Specification.where(andSpecs).and(orSpecs);
+		if (!orSpecs.isEmpty()) {
+			andSpecs.add(orSpecs.size() == 1 ? orSpecs.get(0) : new PredicateGroupSpecification<>(ConditionType.OR, false, orSpecs, false));
+		}
 
-		return new GenericSpecificationContainer<E>(specificationResult, parameters);
+		if (andSpecs.isEmpty()) {
+			return null;
+		}
+		return andSpecs.size() == 1 ? andSpecs.get(0) : new PredicateGroupSpecification<>(ConditionType.AND, false, andSpecs, false);
+	}
+
+	private void addByConditionType(Specification<E> specification, ConditionType conditionType, List<Specification<E>> andSpecs,
+			List<Specification<E>> orSpecs) {
+		if (conditionType.equals(ConditionType.AND)) {
+			andSpecs.add(specification);
+		}
+		else {
+			orSpecs.add(specification);
+		}
 	}
 
 }
\ No newline at end of file
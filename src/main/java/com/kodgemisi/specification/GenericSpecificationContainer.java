@@ -3,13 +3,16 @@ package com.kodgemisi.specification;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.EntityGraph.EntityGraphType;
 
+import javax.persistence.FlushModeType;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -19,39 +22,97 @@ import java.util.Map;
 @SuppressWarnings({"rawtypes", "unchecked"})
 public class GenericSpecificationContainer<E> implements Specification<E> {
 
+	private static final GenericSpecificationContainer MATCH_ALL = new GenericSpecificationContainer(null);
+
 	private final Specification specification;
 
 	private final List<Map<String, String>> parameters;
 
+	/**
+	 * Query hints to be applied to the {@link javax.persistence.TypedQuery} created from this specification.
+	 * See {@link QueryHintNames} for the supported names.
+	 */
+	private final Map<String, Object> hints;
+
+	private final FlushModeType flushMode;
+
+	/**
+	 * Type and attribute paths of the entity graph which is applied to select queries, {@code null} if there is no entity graph
+	 */
+	private final EntityGraphType entityGraphType;
+
+	private final List<String> entityGraphPaths;
+
 	GenericSpecificationContainer(Specification specification, List<Map<String, String>> parameters) {
+		this(specification, parameters, Collections.emptyMap(), null);
+	}
+
+	GenericSpecificationContainer(Specification specification, List<Map<String, String>> parameters, Map<String, Object> hints,
+			FlushModeType flushMode) {
+		this(specification, parameters, hints, flushMode, null, Collections.emptyList());
+	}
+
+	GenericSpecificationContainer(Specification specification, List<Map<String, String>> parameters, Map<String, Object> hints,
+			FlushModeType flushMode, EntityGraphType entityGraphType, List<String> entityGraphPaths) {
 		this.specification = specification;
 		this.parameters = Collections.unmodifiableList(parameters);
+		this.hints = Collections.unmodifiableMap(hints);
+		this.flushMode = flushMode;
+		this.entityGraphType = entityGraphType;
+		this.entityGraphPaths = Collections.unmodifiableList(entityGraphPaths);
 	}
 
 	GenericSpecificationContainer(Specification specification) {
-		this.specification = specification;
-		this.parameters = Collections.emptyList();
+		this(specification, Collections.emptyList());
 	}
 
 	public static GenericSpecificationContainer where(Specification specification) {
 		return new GenericSpecificationContainer(specification);
 	}
 
+	/**
+	 * @return a shared container without any predicate, hint or entity graph, which matches all entities
+	 */
+	public static <E> GenericSpecificationContainer<E> matchAll() {
+		return MATCH_ALL;
+	}
+
 	public GenericSpecificationContainer<E> or(GenericSpecificationContainer<E> spec) {
 		final ArrayList<Map<String, String>> parameterList = new ArrayList<>(this.parameters);
 		parameterList.addAll(spec.parameters);
-		return new GenericSpecificationContainer<>(Specification.where(this.specification).or(spec), parameterList);
+		final GenericSpecificationContainer<E> graphOwner = entityGraphOwner(spec);
+		return new GenericSpecificationContainer<>(Specification.where(this.specification).or(spec), parameterList, mergeHints(spec),
+												   mergeFlushMode(spec), graphOwner.entityGraphType, graphOwner.entityGraphPaths);
 	}
 
 	public GenericSpecificationContainer<E> and(GenericSpecificationContainer<E> spec) {
 		final ArrayList<Map<String, String>> parameterList = new ArrayList<>(this.parameters);
 		parameterList.addAll(spec.parameters);
-		return new GenericSpecificationContainer<>(Specification.where(this.specification).and(spec), parameterList);
+		final GenericSpecificationContainer<E> graphOwner = entityGraphOwner(spec);
+		return new GenericSpecificationContainer<>(Specification.where(this.specification).and(spec), parameterList, mergeHints(spec),
+												   mergeFlushMode(spec), graphOwner.entityGraphType, graphOwner.entityGraphPaths);
+	}
+
+	// hints of this container win over the ones of the combined container
+	private Map<String, Object> mergeHints(GenericSpecificationContainer<E> spec) {
+		final Map<String, Object> hintMap = new HashMap<>(spec.hints);
+		hintMap.putAll(this.hints);
+		return hintMap;
+	}
+
+	private FlushModeType mergeFlushMode(GenericSpecificationContainer<E> spec) {
+		return this.flushMode != null ? this.flushMode : spec.flushMode;
+	}
+
+	// entity graph of this container wins over the one of the combined container
+	private GenericSpecificationContainer<E> entityGraphOwner(GenericSpecificationContainer<E> spec) {
+		return this.entityGraphType != null ? this : spec;
 	}
 
 	@Override
 	public Predicate toPredicate(Root<E> root, CriteriaQuery<?> query, CriteriaBuilder criteriaBuilder) {
-		return this.specification.toPredicate(root, query, criteriaBuilder);
+		// specification is null when the builder has no criteria but hints
+		return this.specification == null ? null : this.specification.toPredicate(root, query, criteriaBuilder);
 	}
 
 	public boolean hasParameters() {
@@ -61,4 +122,12 @@ public class GenericSpecificationContainer<E> implements Specification<E> {
 	public List<Map<String, String>> getParameters() {
 		return parameters;
 	}
+
+	public boolean hasHints() {
+		return !hints.isEmpty() || flushMode != null;
+	}
+
+	public boolean hasEntityGraph() {
+		return entityGraphType != null;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,204 @@
+package com.kodgemisi.specification;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+
+import javax.persistence.EntityManager;
+import javax.persistence.NoResultException;
+import javax.persistence.Parameter;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * <p>
+ * Executes specifications built by {@link GenericSpecificationBuilder} by applying everything the specification carries
+ * apart from its predicate, namely query hints, flush mode and parameters of custom functions,
+ * to the created {@link javax.persistence.TypedQuery}. For example:
+ * </p>
+ *
+ * <blockquote><pre>
+ * 		GenericSpecificationExecutor&lt;Person&gt; executor = new GenericSpecificationExecutor&lt;&gt;(entityManager, Person.class);
+ * 		List&lt;Person&gt; people = executor.findAll(GenericSpecificationBuilder.of(Person.class)
+ * 			.equals("status", status)
+ * 			.fetchSize(1000)
+ * 			.readOnly()
+ * 		.build());
+ * </pre></blockquote>
+ *
+ * Plain {@link Specification}s are supported as well, they are executed as they are.
+ * Entity graphs created for {@link GenericSpecificationBuilder#fetchGraph(String...)} and {@link GenericSpecificationBuilder#loadGraph(String...)}
+ * are registered to the {@link javax.persistence.EntityManagerFactory}, hence they are shared by all executors of the same factory
+ * and an executor can be created per {@link EntityManager}. Collections of entity graphs are loaded through the persistence context
+ * of the results, hence a transaction is required when a shared {@link EntityManager} is used, otherwise {@link IllegalStateException} is thrown.
+ *
+ * @param <E> entity type
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class GenericSpecificationExecutor<E> {
+
+	private final EntityManager entityManager;
+
+	private final Class<E> domainClass;
+
+	public GenericSpecificationExecutor(EntityManager entityManager, Class<E> domainClass) {
+		this.entityManager = entityManager;
+		this.domainClass = domainClass;
+	}
+
+	public List<E> findAll(Specification<E> specification) {
+		return findAll(specification, Sort.unsorted());
+	}
+
+	public List<E> findAll(Specification<E> specification, Sort sort) {
+		final EntityGraphLoader<E> entityGraphLoader = EntityGraphLoader.of(entityManager, domainClass, specification);
+		return getResultList(createQuery(specification, sort, entityGraphLoader), entityGraphLoader);
+	}
+
+	public Page<E> findAll(Specification<E> specification, Pageable pageable) {
+		if (pageable.isUnpaged()) {
+			return new PageImpl<>(findAll(specification));
+		}
+
+		final EntityGraphLoader<E> entityGraphLoader = EntityGraphLoader.of(entityManager, domainClass, specification);
+		final TypedQuery<E> query = createQuery(specification, pageable.getSort(), entityGraphLoader);
+		query.setFirstResult((int) pageable.getOffset());
+		query.setMaxResults(pageable.getPageSize());
+
+		final List<E> content = getResultList(query, entityGraphLoader);
+		if (pageable.getOffset() == 0 && content.size() < pageable.getPageSize()) {
+			// it's the only page, no need to execute the count query
+			return new PageImpl<>(content, pageable, content.size());
+		}
+		return new PageImpl<>(content, pageable, count(specification));
+	}
+
+	public Optional<E> findOne(Specification<E> specification) {
+		final EntityGraphLoader<E> entityGraphLoader = EntityGraphLoader.of(entityManager, domainClass, specification);
+		try {
+			final E result = createQuery(specification, Sort.unsorted(), entityGraphLoader).setMaxResults(2).getSingleResult();
+			if (entityGraphLoader != null) {
+				entityGraphLoader.load(Collections.singletonList(result));
+			}
+			return Optional.of(result);
+		}
+		catch (NoResultException e) {
+			return Optional.empty();
+		}
+	}
+
+	public long count(Specification<E> specification) {
+		final CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		final CriteriaQuery<Long> query = criteriaBuilder.createQuery(Long.class);
+		final Root<E> root = query.from(domainClass);
+
+		final Predicate predicate = toPredicate(specification, root, query, criteriaBuilder);
+		if (query.isDistinct()) {
+			query.select(criteriaBuilder.countDistinct(root));
+		}
+		else {
+			query.select(criteriaBuilder.count(root));
+		}
+		// order by is meaningless for a count query
+		query.orderBy(Collections.emptyList());
+
+		final TypedQuery<Long> typedQuery = entityManager.createQuery(predicate == null ? query : query.where(predicate));
+		applySpecification(typedQuery, specification);
+
+		final List<Long> totals = typedQuery.getResultList();
+		long total = 0L;
+		for (Long element : totals) {
+			total += element == null ? 0 : element;
+		}
+		return total;
+	}
+
+	TypedQuery<E> createQuery(Specification<E> specification, Sort sort) {
+		return createQuery(specification, sort, EntityGraphLoader.of(entityManager, domainClass, specification));
+	}
+
+	private TypedQuery<E> createQuery(Specification<E> specification, Sort sort, EntityGraphLoader<E> entityGraphLoader) {
+		final CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		final CriteriaQuery<E> query = criteriaBuilder.createQuery(domainClass);
+		final Root<E> root = query.from(domainClass);
+
+		final Predicate predicate = toPredicate(specification, root, query, criteriaBuilder);
+		if (predicate != null) {
+			query.where(predicate);
+		}
+		query.select(root);
+
+		if (sort.isSorted()) {
+			query.orderBy(QueryUtils.toOrders(sort, root, criteriaBuilder));
+		}
+
+		final TypedQuery<E> typedQuery = entityManager.createQuery(query);
+		applySpecification(typedQuery, specification);
+		if (entityGraphLoader != null) {
+			entityGraphLoader.applyTo(typedQuery);
+		}
+		return typedQuery;
+	}
+
+	private List<E> getResultList(TypedQuery<E> query, EntityGraphLoader<E> entityGraphLoader) {
+		final List<E> results = query.getResultList();
+		if (entityGraphLoader != null) {
+			// collections of the entity graph are loaded by separate queries
+			entityGraphLoader.load(results);
+		}
+		return results;
+	}
+
+	private Predicate toPredicate(Specification<E> specification, Root<E> root, CriteriaQuery<?> query, CriteriaBuilder criteriaBuilder) {
+		return specification == null ? null : specification.toPredicate(root, query, criteriaBuilder);
+	}
+
+	/**
+	 * Applies hints, flush mode and custom function parameters of the given specification in case it's a {@link GenericSpecificationContainer}
+	 */
+	static void applySpecification(TypedQuery<?> query, Specification<?> specification) {
+		if (!(specification instanceof GenericSpecificationContainer)) {
+			return;
+		}
+
+		final GenericSpecificationContainer<?> container = (GenericSpecificationContainer<?>) specification;
+		for (Map.Entry<String, Object> hint : container.getHints().entrySet()) {
+			query.setHint(hint.getKey(), hint.getValue());
+		}
+
+		if (container.getFlushMode() != null) {
+			query.setFlushMode(container.getFlushMode());
+		}
+
+		bindParameters(query, container);
+	}
+
+	/**
+	 * Binds custom function parameters of the given specification in case it's a {@link GenericSpecificationContainer}
+	 */
+	static void bindParameters(TypedQuery<?> query, Specification<?> specification) {
+		if (!(specification instanceof GenericSpecificationContainer) || !((GenericSpecificationContainer<?>) specification).hasParameters()) {
+			return;
+		}
+
+		// parameter maps are filled each time the predicate is generated so only the ones of this query are bound
+		final GenericSpecificationContainer<?> container = (GenericSpecificationContainer<?>) specification;
+		for (Parameter<?> parameter : query.getParameters()) {
+			for (Map<String, String> parameterMap : container.getParameters()) {
+				if (parameter.getName() != null && parameterMap.containsKey(parameter.getName())) {
+					query.setParameter(parameter.getName(), parameterMap.get(parameter.getName()));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,448 @@
+package com.kodgemisi.specification;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.util.ReflectionUtils;
+
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.criteria.JoinType;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.time.temporal.Temporal;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * Compiles specifications built by {@link GenericSpecificationBuilder} to Java predicates, so that already loaded entities
+ * can be matched without a query. Criteria are evaluated with three-valued logic against null values, and an entity matches
+ * a criteria on a to-many relation if any of the elements matches, as the rows of a left join would.
+ * Criteria of a group apply to the same element and a negated group having criteria on a to-many relation matches
+ * if none of the elements matches, see {@link PredicateGroupSpecification}.
+ * </p>
+ *
+ * <p>
+ * The result may still differ from the database's since strings are compared by {@link String#equals(Object)} regardless of
+ * the collation of the column, and like is evaluated by lower casing in {@link Locale#ROOT}. Hence the caller should opt in.
+ * </p>
+ *
+ * <p>
+ * Custom specifications, custom functions, entity values, comparisons of values other than
+ * numbers and dates and criteria of a group on more than one to-many relation can't be compiled. Properties are read by their getters
+ * and only if they are loaded, so that evaluation never hits the database. Some of these can only be detected during evaluation,
+ * in that case {@link NotCompilableException} is thrown so that the caller can fall back to the database.
+ * </p>
+ */
+final class InMemorySpecification {
+
+	// condition of a specification which doesn't generate a predicate, e.g. a left join
+	private static final Condition NO_CONDITION = (entity, element) -> Boolean.TRUE;
+
+	private static final Set<Class<?>> SIMPLE_VALUE_TYPES = new HashSet<>(
+			Arrays.asList(String.class, Boolean.class, Character.class, UUID.class));
+
+	// getters are held by the classes themselves, so that entity and proxy classes of a redeployed application can be unloaded
+	private static final ClassValue<ConcurrentMap<String, Method>> GETTERS = new ClassValue<ConcurrentMap<String, Method>>() {
+
+		@Override
+		protected ConcurrentMap<String, Method> computeValue(Class<?> clazz) {
+			return new ConcurrentHashMap<>();
+		}
+	};
+
+	private InMemorySpecification() {
+	}
+
+	/**
+	 * @param persistenceUnitUtil used to refuse evaluating entities whose properties aren't loaded
+	 * @return a predicate which matches the entities satisfying the given specification or {@code null} if the specification can't be compiled
+	 */
+	static <E> Predicate<E> compile(Specification<E> specification, PersistenceUnitUtil persistenceUnitUtil) {
+		try {
+			final Condition condition = new Compilation(persistenceUnitUtil).compile(specification);
+			return entity -> {
+				if (!persistenceUnitUtil.isLoaded(entity)) {
+					throw new NotCompilableException("Entity is not loaded.");
+				}
+				return Boolean.TRUE.equals(condition.evaluate(entity, null));
+			};
+		}
+		catch (NotCompilableException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Evaluates to {@code TRUE}, {@code FALSE} or {@code null} when the result is unknown in terms of SQL
+	 */
+	@FunctionalInterface
+	private interface Condition {
+
+		Boolean evaluate(Object entity, Object element);
+	}
+
+	static final class NotCompilableException extends RuntimeException {
+
+		NotCompilableException(String message) {
+			super(message, null, false, false);
+		}
+	}
+
+	private static final class Compilation {
+
+		private final PersistenceUnitUtil persistenceUnitUtil;
+
+		// to-many relation joined by the join scope being compiled
+		private String toManyRelation;
+
+		private boolean inJoinScope;
+
+		// number of the compiled criteria on to-many relations
+		private int toManyCriteria;
+
+		private Compilation(PersistenceUnitUtil persistenceUnitUtil) {
+			this.persistenceUnitUtil = persistenceUnitUtil;
+		}
+
+		private Condition compile(Specification<?> specification) {
+			if (specification == null) {
+				return NO_CONDITION;
+			}
+			if (specification instanceof GenericSpecificationContainer) {
+				final GenericSpecificationContainer<?> container = (GenericSpecificationContainer<?>) specification;
+				if (container.hasParameters()) {
+					throw new NotCompilableException("Custom functions can't be compiled.");
+				}
+				return compile(container.getSpecification());
+			}
+			if (specification instanceof PredicateGroupSpecification) {
+				final PredicateGroupSpecification<?> group = (PredicateGroupSpecification<?>) specification;
+				if (group.isJoinScope() || group.isNegated()) {
+					return compileJoinScope(() -> compileGroup(group), group.isNegated());
+				}
+				return compileGroup(group);
+			}
+			if (specification instanceof GenericSpecification) {
+				final FilterCriteria<?> filterCriteria = ((GenericSpecification<?, ?, ?>) specification).getFilterCriteria();
+				if (!inJoinScope && filterCriteria.getRelationType().equals(RelationType.TO_MANY)) {
+					// the criteria joins the to-many relation by itself
+					return compileJoinScope(() -> compileCriteria(filterCriteria), false);
+				}
+				return compileCriteria(filterCriteria);
+			}
+			throw new NotCompilableException("Custom specifications can't be compiled.");
+		}
+
+		private Condition compileGroup(PredicateGroupSpecification<?> group) {
+			final Condition[] conditions = group.getSpecifications()
+					.stream()
+					.map(this::compile)
+					.filter(condition -> condition != NO_CONDITION)
+					.toArray(Condition[]::new);
+			if (conditions.length == 0) {
+				return NO_CONDITION;
+			}
+
+			final boolean and = group.getConditionType().equals(ConditionType.AND);
+			return (entity, element) -> {
+				boolean unknown = false;
+				for (Condition item : conditions) {
+					final Boolean result = item.evaluate(entity, element);
+					if (result == null) {
+						unknown = true;
+					}
+					else if (result != and) {
+						// FALSE for AND, TRUE for OR decides the result
+						return result;
+					}
+				}
+				return unknown ? null : and;
+			};
+		}
+
+		/**
+		 * Compiles the criteria sharing the joins of to-many relations, as PredicateGroupSpecification does, to a condition
+		 * of the entity. Each element of the to-many relation is a row of the left join, a relation without elements results in a row of nulls.
+		 */
+		private Condition compileJoinScope(Supplier<Condition> scope, boolean negated) {
+			final String enclosingToManyRelation = toManyRelation;
+			final boolean enclosingInJoinScope = inJoinScope;
+			final int enclosingToManyCriteria = toManyCriteria;
+			toManyRelation = null;
+			inJoinScope = true;
+			try {
+				final Condition condition = scope.get();
+				if (condition == NO_CONDITION) {
+					return NO_CONDITION;
+				}
+				final String relation = toManyRelation;
+				final Condition scopeCondition = relation == null ? condition : (entity, element) -> anyElementMatches(entity, relation, condition);
+
+				if (!negated) {
+					return scopeCondition;
+				}
+				if (toManyCriteria == enclosingToManyCriteria) {
+					return (entity, element) -> {
+						final Boolean result = scopeCondition.evaluate(entity, element);
+						return result == null ? null : !result;
+					};
+				}
+				// NOT EXISTS is never unknown
+				return (entity, element) -> !Boolean.TRUE.equals(scopeCondition.evaluate(entity, element));
+			}
+			finally {
+				toManyRelation = enclosingToManyRelation;
+				inJoinScope = enclosingInJoinScope;
+			}
+		}
+
+		private Condition compileCriteria(FilterCriteria<?> filterCriteria) {
+			final String key = filterCriteria.getKey();
+			final Object value = filterCriteria.getValue();
+
+			switch (filterCriteria.getOperation()) {
+			case JOIN:
+			case JOIN_FETCH: {
+				if (JoinType.LEFT.equals(filterCriteria.getJoinType())) {
+					return NO_CONDITION;
+				}
+				if (!JoinType.INNER.equals(filterCriteria.getJoinType())) {
+					throw new NotCompilableException("Only inner and left joins can be compiled.");
+				}
+				// inner join filters out the entities without the relation
+				return (entity, element) -> {
+					final Object relation = read(entity, key);
+					return relation != null && !(relation instanceof Collection && ((Collection<?>) relation).isEmpty());
+				};
+			}
+			case EQUAL: {
+				checkSimpleValue(value);
+				final BiFunction<Object, Object, Object> path = compilePath(filterCriteria);
+				return (entity, element) -> {
+					final Object fieldValue = path.apply(entity, element);
+					return fieldValue == null ? null : valuesEqual(fieldValue, value);
+				};
+			}
+			case LIKE: {
+				final boolean caseSensitive = filterCriteria.isCaseSensitive();
+				// wildcards are matched literally as GenericSpecification escapes them
+				final String pattern = caseSensitive ? String.valueOf(value) : String.valueOf(value).toLowerCase(Locale.ROOT);
+				final BiFunction<Object, Object, Object> path = compilePath(filterCriteria);
+				return (entity, element) -> {
+					final Object fieldValue = path.apply(entity, element);
+					if (fieldValue == null) {
+						return null;
+					}
+					if (!(fieldValue instanceof String)) {
+						throw new NotCompilableException("Like on non string fields can't be compiled.");
+					}
+					return (caseSensitive ? (String) fieldValue : ((String) fieldValue).toLowerCase(Locale.ROOT)).contains(pattern);
+				};
+			}
+			case IS_NULL:
+			case IS_NOT_NULL: {
+				final boolean isNull = filterCriteria.getOperation().equals(CriteriaOperation.IS_NULL);
+				final BiFunction<Object, Object, Object> path = compilePath(filterCriteria);
+				return (entity, element) -> (path.apply(entity, element) == null) == isNull;
+			}
+			case IN: {
+				final Collection<?> values = value instanceof Collection || value instanceof Object[] ?
+						asCollection(value) : Collections.singletonList(value);
+				values.forEach(InMemorySpecification::checkSimpleValue);
+				if (values.isEmpty()) {
+					// same as the disjunction rendered for the database, false even for null values
+					return (entity, element) -> false;
+				}
+				final BiFunction<Object, Object, Object> path = compilePath(filterCriteria);
+				return (entity, element) -> {
+					final Object fieldValue = path.apply(entity, element);
+					if (fieldValue == null) {
+						return null;
+					}
+					for (Object item : values) {
+						if (valuesEqual(fieldValue, item)) {
+							return true;
+						}
+					}
+					return false;
+				};
+			}
+			case LESS_THAN:
+			case LESS_THAN_OR_EQUAL_TO:
+			case GREATER_THAN:
+			case GREATER_THAN_OR_EQUAL_TO: {
+				checkSimpleValue(value);
+				final CriteriaOperation operation = filterCriteria.getOperation();
+				final BiFunction<Object, Object, Object> path = compilePath(filterCriteria);
+				return (entity, element) -> {
+					final Object fieldValue = path.apply(entity, element);
+					if (fieldValue == null) {
+						return null;
+					}
+					final int comparison = compare(fieldValue, value);
+					switch (operation) {
+					case LESS_THAN:
+						return comparison < 0;
+					case LESS_THAN_OR_EQUAL_TO:
+						return comparison <= 0;
+					case GREATER_THAN:
+						return comparison > 0;
+					default:
+						return comparison >= 0;
+					}
+				};
+			}
+			default:
+				// GenericSpecification doesn't generate a predicate for the rest
+				return NO_CONDITION;
+			}
+		}
+
+		/**
+		 * Resolves the value of the criteria key the same way as GenericSpecification#resolvePath does,
+		 * the function takes the entity and the element of the to-many relation
+		 */
+		private BiFunction<Object, Object, Object> compilePath(FilterCriteria<?> filterCriteria) {
+			final String key = filterCriteria.getKey();
+			final String[] columns = key.split("\\.");
+
+			if (filterCriteria.getRelationType().equals(RelationType.NO_RELATION) || columns.length == 1) {
+				if (columns.length > 1) {
+					throw new NotCompilableException("Nested paths require a relation type.");
+				}
+				return (entity, element) -> read(entity, key);
+			}
+
+			if (filterCriteria.getRelationType().equals(RelationType.TO_ONE)) {
+				return (entity, element) -> {
+					Object value = entity;
+					for (String column : columns) {
+						if (value == null) {
+							return null;
+						}
+						if (value instanceof Collection) {
+							throw new NotCompilableException("To-one path " + key + " goes through a collection.");
+						}
+						value = read(value, column);
+					}
+					return value;
+				};
+			}
+
+			if (toManyRelation != null && !toManyRelation.equals(columns[0])) {
+				throw new NotCompilableException("Criteria of a group on more than one to-many relation can't be compiled.");
+			}
+			toManyRelation = columns[0];
+			toManyCriteria++;
+			return (entity, element) -> element == null ? null : read(element, columns[1]);
+		}
+
+		private Boolean anyElementMatches(Object entity, String relation, Condition condition) {
+			final Collection<?> elements = asCollection(read(entity, relation));
+			if (elements.isEmpty()) {
+				return Boolean.TRUE.equals(condition.evaluate(entity, null));
+			}
+			for (Object element : elements) {
+				if (Boolean.TRUE.equals(condition.evaluate(entity, element))) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Reads the property if it's loaded, e.g. not a lazy relation which isn't initialized yet, so that it doesn't hit the database
+		 */
+		private Object read(Object target, String property) {
+			if (!persistenceUnitUtil.isLoaded(target, property)) {
+				throw new NotCompilableException("Property " + property + " of " + target.getClass().getName() + " is not loaded.");
+			}
+			return readProperty(target, property);
+		}
+	}
+
+	private static void checkSimpleValue(Object value) {
+		if (value == null || SIMPLE_VALUE_TYPES.contains(value.getClass()) || value instanceof Number || value instanceof Enum
+				|| value instanceof Date || value instanceof Temporal) {
+			return;
+		}
+		throw new NotCompilableException("Values of type " + value.getClass().getName() + " can't be compiled.");
+	}
+
+	private static boolean valuesEqual(Object fieldValue, Object value) {
+		if (fieldValue instanceof Number && value instanceof Number) {
+			return toBigDecimal((Number) fieldValue).compareTo(toBigDecimal((Number) value)) == 0;
+		}
+		if (fieldValue instanceof Date && value instanceof Date) {
+			return ((Date) fieldValue).getTime() == ((Date) value).getTime();
+		}
+		return fieldValue.equals(value);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static int compare(Object fieldValue, Object value) {
+		if (fieldValue instanceof Number && value instanceof Number) {
+			return toBigDecimal((Number) fieldValue).compareTo(toBigDecimal((Number) value));
+		}
+		if (fieldValue instanceof Date && value instanceof Date) {
+			return Long.compare(((Date) fieldValue).getTime(), ((Date) value).getTime());
+		}
+		// strings and enums are ordered by the collation and the mapping of the column in the database
+		if (fieldValue instanceof Temporal && fieldValue.getClass().equals(value.getClass())) {
+			return ((Comparable) fieldValue).compareTo(value);
+		}
+		throw new NotCompilableException("Values of type " + fieldValue.getClass().getName() + " and " + value.getClass().getName()
+												 + " can't be compared in memory.");
+	}
+
+	private static BigDecimal toBigDecimal(Number number) {
+		return number instanceof BigDecimal ? (BigDecimal) number : new BigDecimal(number.toString());
+	}
+
+	private static Collection<?> asCollection(Object value) {
+		if (value == null) {
+			return Collections.emptyList();
+		}
+		if (value instanceof Collection) {
+			return (Collection<?>) value;
+		}
+		if (value instanceof Object[]) {
+			return Arrays.asList((Object[]) value);
+		}
+		if (value instanceof Map) {
+			return ((Map<?, ?>) value).values();
+		}
+		throw new NotCompilableException("Value of type " + value.getClass().getName() + " is not a collection.");
+	}
+
+	/**
+	 * Reads the property by its getter so that proxies are read properly, getters are cached per class
+	 */
+	private static Object readProperty(Object target, String property) {
+		final Method getter = GETTERS.get(target.getClass()).computeIfAbsent(property, name -> findGetter(target.getClass(), name));
+		return ReflectionUtils.invokeMethod(getter, target);
+	}
+
+	private static Method findGetter(Class<?> clazz, String property) {
+		final PropertyDescriptor propertyDescriptor = BeanUtils.getPropertyDescriptor(clazz, property);
+		if (propertyDescriptor == null || propertyDescriptor.getReadMethod() == null) {
+			throw new NotCompilableException("Property " + property + " of " + clazz.getName() + " has no getter.");
+		}
+		final Method readMethod = propertyDescriptor.getReadMethod();
+		ReflectionUtils.makeAccessible(readMethod);
+		return readMethod;
+	}
+}
@@ -0,0 +1,123 @@
+package com.kodgemisi.specification;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Subquery;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Combines predicates of the given specifications into a single n-ary AND or OR predicate,
+ * unlike {@link Specification#and(Specification)} and {@link Specification#or(Specification)} which nest a binary predicate per call.
+ * Specifications generating no predicate, e.g. joins, are skipped.
+ * </p>
+ *
+ * <p>
+ * A join scope, i.e. a group of {@link GenericSpecificationBuilder#anyOf}, {@link GenericSpecificationBuilder#allOf} or
+ * {@link GenericSpecificationBuilder#not}, joins each to-many relation once for all of its criteria so that they apply to the same element.
+ * Criteria outside of a join scope join the to-many relation separately, so each of them applies to any element.
+ * A negated group having criteria on a to-many relation is rendered as {@code NOT EXISTS} so that it means "no element matches"
+ * instead of "an element doesn't match".
+ * </p>
+ *
+ * @param <E>
+ */
+@AllArgsConstructor
+@Getter(AccessLevel.PACKAGE)
+class PredicateGroupSpecification<E> implements Specification<E> {
+
+	private final ConditionType conditionType;
+
+	private final boolean negated;
+
+	private final List<Specification<E>> specifications;
+
+	private final boolean joinScope;
+
+	@Override
+	public Predicate toPredicate(Root<E> root, CriteriaQuery<?> query, CriteriaBuilder criteriaBuilder) {
+		return toPredicate(root, query, criteriaBuilder, null);
+	}
+
+	/**
+	 * @param joins joins of to-many relations of the enclosing join scope, {@code null} if there is none
+	 */
+	Predicate toPredicate(Root<E> root, CriteriaQuery<?> query, CriteriaBuilder criteriaBuilder, Map<String, Join<E, ?>> joins) {
+		if (negated && hasToManyCriteria()) {
+			return criteriaBuilder.not(criteriaBuilder.exists(createSubquery(root, query, criteriaBuilder)));
+		}
+
+		final Predicate predicate = combine(root, query, criteriaBuilder, joinScope ? new HashMap<>() : joins);
+		return predicate != null && negated ? criteriaBuilder.not(predicate) : predicate;
+	}
+
+	/**
+	 * Correlated subquery selecting the root entity if the group matches it
+	 */
+	@SuppressWarnings("unchecked")
+	private Subquery<E> createSubquery(Root<E> root, CriteriaQuery<?> query, CriteriaBuilder criteriaBuilder) {
+		final Class<E> entityClass = (Class<E>) root.getJavaType();
+		final Subquery<E> subquery = query.subquery(entityClass);
+		final Root<E> subqueryRoot = subquery.from(entityClass);
+
+		final Predicate correlation = criteriaBuilder.equal(subqueryRoot, root);
+		final Predicate predicate = combine(subqueryRoot, query, criteriaBuilder, new HashMap<>());
+		return subquery.select(subqueryRoot).where(predicate == null ? correlation : criteriaBuilder.and(correlation, predicate));
+	}
+
+	@SuppressWarnings("unchecked")
+	private Predicate combine(Root<E> root, CriteriaQuery<?> query, CriteriaBuilder criteriaBuilder, Map<String, Join<E, ?>> joins) {
+		final List<Predicate> predicates = new ArrayList<>(specifications.size());
+		for (Specification<E> specification : specifications) {
+			final Predicate predicate;
+			if (specification instanceof GenericSpecification) {
+				predicate = ((GenericSpecification<E, ?, ?>) specification).toPredicate(root, query, criteriaBuilder, joins);
+			}
+			else if (specification instanceof PredicateGroupSpecification) {
+				predicate = ((PredicateGroupSpecification<E>) specification).toPredicate(root, query, criteriaBuilder, joins);
+			}
+			else {
+				predicate = specification.toPredicate(root, query, criteriaBuilder);
+			}
+			if (predicate != null) {
+				predicates.add(predicate);
+			}
+		}
+
+		if (predicates.isEmpty()) {
+			return null;
+		}
+		if (predicates.size() == 1) {
+			return predicates.get(0);
+		}
+		if (conditionType.equals(ConditionType.AND)) {
+			return criteriaBuilder.and(predicates.toArray(new Predicate[0]));
+		}
+		return criteriaBuilder.or(predicates.toArray(new Predicate[0]));
+	}
+
+	private boolean hasToManyCriteria() {
+		for (Specification<E> specification : specifications) {
+			if (specification instanceof GenericSpecification
+					&& ((GenericSpecification<?, ?, ?>) specification).getFilterCriteria().getRelationType() == RelationType.TO_MANY) {
+				return true;
+			}
+			if (specification instanceof PredicateGroupSpecification && ((PredicateGroupSpecification<?>) specification).hasToManyCriteria()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
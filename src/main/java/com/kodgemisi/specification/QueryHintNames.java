@@ -0,0 +1,27 @@
+package com.kodgemisi.specification;
+
+/**
+ * <p>
+ * Names of the query hints which can be attached to a specification through {@link GenericSpecificationBuilder}.
+ * Hints prefixed with {@code javax.persistence} are defined by JPA, the ones prefixed with {@code org.hibernate}
+ * are provider specific and silently ignored by other providers.
+ * </p>
+ */
+public final class QueryHintNames {
+
+	public static final String TIMEOUT = "javax.persistence.query.timeout";
+
+	public static final String FETCH_SIZE = "org.hibernate.fetchSize";
+
+	public static final String READ_ONLY = "org.hibernate.readOnly";
+
+	public static final String CACHEABLE = "org.hibernate.cacheable";
+
+	/**
+	 * Requires {@code hibernate.use_sql_comments=true} to be rendered into the SQL.
+	 */
+	public static final String COMMENT = "org.hibernate.comment";
+
+	private QueryHintNames() {
+	}
+}
@@ -0,0 +1,849 @@
+package com.kodgemisi.specification;
+
+import org.springframework.data.jpa.repository.EntityGraph.EntityGraphType;
+import org.springframework.util.ClassUtils;
+
+import javax.persistence.FlushModeType;
+import javax.persistence.criteria.JoinType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * Serializes the state of a {@link GenericSpecificationBuilder} to a compact, versioned binary format or to a readable JSON,
+ * so that saved searches can be stored, sent to other nodes and rebuilt there. For example:
+ * </p>
+ *
+ * <blockquote><pre>
+ * 		byte[] bytes = SpecificationCodec.toBytes(GenericSpecificationBuilder.of(Person.class)
+ * 			.equals("status", Status.ACTIVE)
+ * 			.greaterThan("birthDate", minBirthDate));
+ *
+ * 		Specification&lt;Person&gt; specification = SpecificationCodec.fromBytes(Person.class, bytes).build();
+ * </pre></blockquote>
+ *
+ * <p>
+ * Criteria, nested groups, joins, hints, flush mode and entity graphs are serialized. Values can be strings, primitive wrappers,
+ * {@link BigDecimal}, {@link BigInteger}, {@link UUID}, enums, {@link Date}, {@link java.sql.Date}, {@link Time}, {@link Timestamp}
+ * with its nanos, java.time types and collections or arrays of them. Custom specifications and custom functions can't be serialized
+ * since they are arbitrary code. A deserialized builder is in AND mode just like a new one, so it can be chained further.
+ * </p>
+ *
+ * <p>
+ * Input is validated, malformed, truncated or too deeply nested input results in an {@link IllegalArgumentException}.
+ * Enum classes are loaded by {@link ClassUtils#getDefaultClassLoader()}, i.e. the context class loader of the application.
+ * </p>
+ */
+public final class SpecificationCodec {
+
+	static final int VERSION = 1;
+
+	// Wire codes are the indexes in the following arrays, hence new values must only be appended.
+
+	private static final CriteriaOperation[] OPERATIONS = { CriteriaOperation.JOIN, CriteriaOperation.JOIN_FETCH, CriteriaOperation.EQUAL,
+			CriteriaOperation.EQUAL_TO_MANY, CriteriaOperation.EQUAL_TO_ONE, CriteriaOperation.LIKE, CriteriaOperation.IS_NULL,
+			CriteriaOperation.IS_NOT_NULL, CriteriaOperation.IN, CriteriaOperation.LESS_THAN, CriteriaOperation.LESS_THAN_OR_EQUAL_TO,
+			CriteriaOperation.GREATER_THAN, CriteriaOperation.GREATER_THAN_OR_EQUAL_TO };
+
+	private static final RelationType[] RELATION_TYPES = { RelationType.NO_RELATION, RelationType.TO_ONE, RelationType.TO_MANY };
+
+	private static final ConditionType[] CONDITION_TYPES = { ConditionType.AND, ConditionType.OR };
+
+	private static final JoinType[] JOIN_TYPES = { JoinType.INNER, JoinType.LEFT, JoinType.RIGHT };
+
+	private static final FlushModeType[] FLUSH_MODES = { FlushModeType.AUTO, FlushModeType.COMMIT };
+
+	private static final EntityGraphType[] ENTITY_GRAPH_TYPES = { EntityGraphType.FETCH, EntityGraphType.LOAD };
+
+	// maximum depth of nested groups and of nested collection values, so that malformed input can't exhaust the stack
+	static final int MAX_DEPTH = 32;
+
+	private SpecificationCodec() {
+	}
+
+	/**
+	 * @throws IllegalArgumentException in case the builder has custom specifications or a value which can't be serialized
+	 */
+	public static byte[] toBytes(GenericSpecificationBuilder<?> builder) {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(VERSION);
+			writeBuilder(out, builder, 0);
+		}
+		catch (IOException e) {
+			// not expected for an in memory stream
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @throws IllegalArgumentException in case the given bytes are malformed or of an unsupported version
+	 */
+	public static <E> GenericSpecificationBuilder<E> fromBytes(Class<E> clazz, byte[] bytes) {
+		// empty values of the serialized builder were kept deliberately
+		final GenericSpecificationBuilder<E> builder = GenericSpecificationBuilder.of(clazz).keepEmpty();
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			checkVersion(in.readUnsignedByte());
+			readBuilder(in, builder, 0);
+			if (in.available() > 0) {
+				throw new IllegalArgumentException("Malformed specification, unexpected trailing bytes.");
+			}
+		}
+		catch (IOException | UncheckedIOException e) {
+			throw new IllegalArgumentException("Malformed specification.", e);
+		}
+		return builder.and().skipEmpty();
+	}
+
+	/**
+	 * @throws IllegalArgumentException in case the builder has custom specifications or a value which can't be serialized
+	 */
+	public static String toJson(GenericSpecificationBuilder<?> builder) {
+		final Map<String, Object> json = new LinkedHashMap<>();
+		json.put("version", VERSION);
+		json.putAll(toJsonTree(builder, 0));
+		return SpecificationJson.write(json);
+	}
+
+	/**
+	 * @throws IllegalArgumentException in case the given JSON is malformed or of an unsupported version
+	 */
+	public static <E> GenericSpecificationBuilder<E> fromJson(Class<E> clazz, String json) {
+		final Map<String, Object> tree = asObject(SpecificationJson.read(json));
+		final Object version = tree.get("version");
+		checkVersion(version instanceof Long ? ((Long) version).intValue() : -1);
+
+		// empty values of the serialized builder were kept deliberately
+		final GenericSpecificationBuilder<E> builder = GenericSpecificationBuilder.of(clazz).keepEmpty();
+		readJsonTree(tree, builder, 0);
+		return builder.and().skipEmpty();
+	}
+
+	private static void checkVersion(int version) {
+		if (version != VERSION) {
+			throw new IllegalArgumentException("Unsupported specification format version: " + version);
+		}
+	}
+
+	private static void checkSerializable(GenericSpecificationBuilder<?> builder, int depth) {
+		if (builder.hasCustomSpecifications()) {
+			throw new IllegalArgumentException("Custom specifications and custom functions can't be serialized.");
+		}
+		checkDepth(depth);
+	}
+
+	private static void checkDepth(int depth) {
+		if (depth > MAX_DEPTH) {
+			throw new IllegalArgumentException("Specification is nested deeper than " + MAX_DEPTH + " levels.");
+		}
+	}
+
+	// ---------------------------------------------------------------- binary
+
+	private static void writeBuilder(DataOutputStream out, GenericSpecificationBuilder<?> builder, int depth) throws IOException {
+		checkSerializable(builder, depth);
+
+		final List<FilterCriteria<?>> filterCriteriaList = builder.getFilterCriteriaList();
+		writeVarInt(out, filterCriteriaList.size());
+		for (FilterCriteria<?> filterCriteria : filterCriteriaList) {
+			writeCode(out, OPERATIONS, filterCriteria.getOperation());
+			writeString(out, filterCriteria.getKey());
+			writeCode(out, RELATION_TYPES, filterCriteria.getRelationType());
+			writeCode(out, CONDITION_TYPES, filterCriteria.getConditionType());
+			writeCode(out, JOIN_TYPES, filterCriteria.getJoinType());
+			writeValue(out, filterCriteria.getValue(), 0);
+		}
+
+		final List<? extends CriteriaGroup<?>> criteriaGroups = builder.getCriteriaGroups();
+		writeVarInt(out, criteriaGroups.size());
+		for (CriteriaGroup<?> criteriaGroup : criteriaGroups) {
+			writeCode(out, CONDITION_TYPES, criteriaGroup.getConditionType());
+			out.writeBoolean(criteriaGroup.isNegated());
+			writeBuilder(out, criteriaGroup.getBuilder(), depth + 1);
+		}
+
+		final Map<String, Object> hints = builder.getHints();
+		writeVarInt(out, hints.size());
+		for (Map.Entry<String, Object> hint : hints.entrySet()) {
+			writeString(out, hint.getKey());
+			writeValue(out, hint.getValue(), 0);
+		}
+
+		writeCode(out, FLUSH_MODES, builder.getFlushMode());
+		writeCode(out, ENTITY_GRAPH_TYPES, builder.getEntityGraphType());
+		final List<String> entityGraphPaths = builder.getEntityGraphPaths();
+		writeVarInt(out, entityGraphPaths.size());
+		for (String entityGraphPath : entityGraphPaths) {
+			writeString(out, entityGraphPath);
+		}
+	}
+
+	private static <E> void readBuilder(DataInputStream in, GenericSpecificationBuilder<E> builder, int depth) throws IOException {
+		checkDepth(depth);
+		final int criteriaCount = readVarInt(in);
+		for (int i = 0; i < criteriaCount; i++) {
+			final CriteriaOperation operation = readRequiredCode(in, OPERATIONS);
+			final String key = readString(in);
+			final RelationType relationType = readRequiredCode(in, RELATION_TYPES);
+			final ConditionType conditionType = readRequiredCode(in, CONDITION_TYPES);
+			final JoinType joinType = readCode(in, JOIN_TYPES);
+			addCriteria(builder, operation, key, readValue(in, 0), relationType, conditionType, joinType);
+		}
+
+		final int groupCount = readVarInt(in);
+		for (int i = 0; i < groupCount; i++) {
+			final ConditionType conditionType = readRequiredCode(in, CONDITION_TYPES);
+			final boolean negated = in.readBoolean();
+			addGroup(builder, conditionType, negated, groupBuilder -> {
+				try {
+					readBuilder(in, groupBuilder, depth + 1);
+				}
+				catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		}
+
+		final int hintCount = readVarInt(in);
+		for (int i = 0; i < hintCount; i++) {
+			builder.hint(readString(in), readValue(in, 0));
+		}
+
+		final FlushModeType flushMode = readCode(in, FLUSH_MODES);
+		final EntityGraphType entityGraphType = readCode(in, ENTITY_GRAPH_TYPES);
+		final String[] entityGraphPaths = new String[readVarInt(in)];
+		for (int i = 0; i < entityGraphPaths.length; i++) {
+			entityGraphPaths[i] = readString(in);
+		}
+		setExecutionOptions(builder, flushMode, entityGraphType, entityGraphPaths);
+	}
+
+	private static void writeValue(DataOutputStream out, Object value, int depth) throws IOException {
+		checkDepth(depth);
+		final ValueType valueType = ValueType.of(value);
+		out.writeByte(valueType.ordinal());
+
+		switch (valueType) {
+		case NULL:
+			break;
+		case BOOLEAN:
+			out.writeBoolean((Boolean) value);
+			break;
+		case INTEGER:
+			out.writeInt((Integer) value);
+			break;
+		case LONG:
+			out.writeLong((Long) value);
+			break;
+		case DOUBLE:
+			out.writeDouble((Double) value);
+			break;
+		case FLOAT:
+			out.writeFloat((Float) value);
+			break;
+		case SHORT:
+			out.writeShort((Short) value);
+			break;
+		case BYTE:
+			out.writeByte((Byte) value);
+			break;
+		case CHARACTER:
+			out.writeChar((Character) value);
+			break;
+		case UUID:
+			out.writeLong(((UUID) value).getMostSignificantBits());
+			out.writeLong(((UUID) value).getLeastSignificantBits());
+			break;
+		case DATE:
+		case SQL_DATE:
+		case SQL_TIME:
+			out.writeLong(((Date) value).getTime());
+			break;
+		case SQL_TIMESTAMP:
+			out.writeLong(((Timestamp) value).getTime());
+			out.writeInt(((Timestamp) value).getNanos());
+			break;
+		case ENUM:
+			writeString(out, ((Enum<?>) value).getDeclaringClass().getName());
+			writeString(out, ((Enum<?>) value).name());
+			break;
+		case LIST: {
+			final Collection<?> values = ValueType.asCollection(value);
+			writeVarInt(out, values.size());
+			for (Object item : values) {
+				writeValue(out, item, depth + 1);
+			}
+			break;
+		}
+		default:
+			writeString(out, valueType.format(value));
+		}
+	}
+
+	private static Object readValue(DataInputStream in, int depth) throws IOException {
+		checkDepth(depth);
+		final ValueType valueType = codeAt(ValueType.values(), in.readUnsignedByte());
+
+		switch (valueType) {
+		case NULL:
+			return null;
+		case BOOLEAN:
+			return in.readBoolean();
+		case INTEGER:
+			return in.readInt();
+		case LONG:
+			return in.readLong();
+		case DOUBLE:
+			return in.readDouble();
+		case FLOAT:
+			return in.readFloat();
+		case SHORT:
+			return in.readShort();
+		case BYTE:
+			return in.readByte();
+		case CHARACTER:
+			return in.readChar();
+		case UUID:
+			return new UUID(in.readLong(), in.readLong());
+		case DATE:
+			return new Date(in.readLong());
+		case SQL_DATE:
+			return new java.sql.Date(in.readLong());
+		case SQL_TIME:
+			return new Time(in.readLong());
+		case SQL_TIMESTAMP:
+			return ValueType.toTimestamp(in.readLong(), in.readInt());
+		case ENUM: {
+			final String enumClass = readString(in);
+			return toEnum(enumClass, readString(in));
+		}
+		case LIST: {
+			final int size = readVarInt(in);
+			final List<Object> values = new ArrayList<>(Math.min(size, 1024));
+			for (int i = 0; i < size; i++) {
+				values.add(readValue(in, depth + 1));
+			}
+			return values;
+		}
+		default:
+			return valueType.parse(readString(in));
+		}
+	}
+
+	// code 0 represents null, so that optional values take a single byte
+	private static void writeCode(DataOutputStream out, Object[] values, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(0);
+			return;
+		}
+		final int index = Arrays.asList(values).indexOf(value);
+		if (index < 0) {
+			throw new IllegalArgumentException(value + " can't be serialized.");
+		}
+		out.writeByte(index + 1);
+	}
+
+	private static <T> T readCode(DataInputStream in, T[] values) throws IOException {
+		final int code = in.readUnsignedByte();
+		return code == 0 ? null : codeAt(values, code - 1);
+	}
+
+	private static <T> T readRequiredCode(DataInputStream in, T[] values) throws IOException {
+		final T value = readCode(in, values);
+		if (value == null) {
+			throw new IllegalArgumentException("Malformed specification, missing required value.");
+		}
+		return value;
+	}
+
+	private static <T> T codeAt(T[] values, int index) {
+		if (index < 0 || index >= values.length) {
+			throw new IllegalArgumentException("Malformed specification, unknown code: " + index);
+		}
+		return values[index];
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		final int length = readVarInt(in);
+		if (length > in.available()) {
+			throw new IllegalArgumentException("Malformed specification, string exceeds the input.");
+		}
+		final byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readVarInt(DataInputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			final int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				if (value < 0) {
+					break;
+				}
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Malformed specification, invalid length.");
+	}
+
+	// ---------------------------------------------------------------- json
+
+	private static Map<String, Object> toJsonTree(GenericSpecificationBuilder<?> builder, int depth) {
+		checkSerializable(builder, depth);
+		final Map<String, Object> tree = new LinkedHashMap<>();
+
+		final List<Object> criteria = new ArrayList<>();
+		for (FilterCriteria<?> filterCriteria : builder.getFilterCriteriaList()) {
+			final Map<String, Object> criterion = new LinkedHashMap<>();
+			criterion.put("operation", filterCriteria.getOperation().name());
+			criterion.put("key", filterCriteria.getKey());
+			criterion.put("relationType", filterCriteria.getRelationType().name());
+			criterion.put("conditionType", filterCriteria.getConditionType().name());
+			if (filterCriteria.getJoinType() != null) {
+				criterion.put("joinType", filterCriteria.getJoinType().name());
+			}
+			if (filterCriteria.getValue() != null) {
+				criterion.put("value", toJsonValue(filterCriteria.getValue(), 0));
+			}
+			criteria.add(criterion);
+		}
+		if (!criteria.isEmpty()) {
+			tree.put("criteria", criteria);
+		}
+
+		final List<Object> groups = new ArrayList<>();
+		for (CriteriaGroup<?> criteriaGroup : builder.getCriteriaGroups()) {
+			final Map<String, Object> group = new LinkedHashMap<>();
+			group.put("conditionType", criteriaGroup.getConditionType().name());
+			group.put("negated", criteriaGroup.isNegated());
+			group.put("specification", toJsonTree(criteriaGroup.getBuilder(), depth + 1));
+			groups.add(group);
+		}
+		if (!groups.isEmpty()) {
+			tree.put("groups", groups);
+		}
+
+		if (!builder.getHints().isEmpty()) {
+			final Map<String, Object> hints = new LinkedHashMap<>();
+			for (Map.Entry<String, Object> hint : builder.getHints().entrySet()) {
+				hints.put(hint.getKey(), toJsonValue(hint.getValue(), 0));
+			}
+			tree.put("hints", hints);
+		}
+
+		if (builder.getFlushMode() != null) {
+			tree.put("flushMode", builder.getFlushMode().name());
+		}
+
+		if (builder.getEntityGraphType() != null) {
+			final Map<String, Object> entityGraph = new LinkedHashMap<>();
+			entityGraph.put("type", builder.getEntityGraphType().name());
+			entityGraph.put("paths", new ArrayList<Object>(builder.getEntityGraphPaths()));
+			tree.put("entityGraph", entityGraph);
+		}
+		return tree;
+	}
+
+	private static <E> void readJsonTree(Map<String, Object> tree, GenericSpecificationBuilder<E> builder, int depth) {
+		checkDepth(depth);
+
+		for (Object item : asArray(tree.get("criteria"))) {
+			final Map<String, Object> criterion = asObject(item);
+			addCriteria(builder, asEnum(CriteriaOperation.class, criterion.get("operation")), asString(criterion.get("key")),
+						fromJsonValue(criterion.get("value"), 0), asEnum(RelationType.class, criterion.get("relationType")),
+						asEnum(ConditionType.class, criterion.get("conditionType")), asOptionalEnum(JoinType.class, criterion.get("joinType")));
+		}
+
+		for (Object item : asArray(tree.get("groups"))) {
+			final Map<String, Object> group = asObject(item);
+			final Map<String, Object> specification = asObject(group.get("specification"));
+			addGroup(builder, asEnum(ConditionType.class, group.get("conditionType")), asBoolean(group.get("negated")),
+					 groupBuilder -> readJsonTree(specification, groupBuilder, depth + 1));
+		}
+
+		if (tree.get("hints") != null) {
+			for (Map.Entry<String, Object> hint : asObject(tree.get("hints")).entrySet()) {
+				builder.hint(hint.getKey(), fromJsonValue(hint.getValue(), 0));
+			}
+		}
+
+		final FlushModeType flushMode = asOptionalEnum(FlushModeType.class, tree.get("flushMode"));
+		EntityGraphType entityGraphType = null;
+		final List<String> entityGraphPaths = new ArrayList<>();
+		if (tree.get("entityGraph") != null) {
+			final Map<String, Object> entityGraph = asObject(tree.get("entityGraph"));
+			entityGraphType = asEnum(EntityGraphType.class, entityGraph.get("type"));
+			for (Object path : asArray(entityGraph.get("paths"))) {
+				entityGraphPaths.add(asString(path));
+			}
+		}
+		setExecutionOptions(builder, flushMode, entityGraphType, entityGraphPaths.toArray(new String[0]));
+	}
+
+	private static Map<String, Object> toJsonValue(Object value, int depth) {
+		checkDepth(depth);
+		final ValueType valueType = ValueType.of(value);
+		final Map<String, Object> json = new LinkedHashMap<>();
+		json.put("type", valueType.name());
+
+		if (valueType == ValueType.ENUM) {
+			json.put("class", ((Enum<?>) value).getDeclaringClass().getName());
+			json.put("value", ((Enum<?>) value).name());
+		}
+		else if (valueType == ValueType.LIST) {
+			final List<Object> values = new ArrayList<>();
+			for (Object item : ValueType.asCollection(value)) {
+				values.add(toJsonValue(item, depth + 1));
+			}
+			json.put("value", values);
+		}
+		else if (valueType != ValueType.NULL) {
+			json.put("value", valueType.format(value));
+		}
+		return json;
+	}
+
+	private static Object fromJsonValue(Object json, int depth) {
+		if (json == null) {
+			return null;
+		}
+		checkDepth(depth);
+
+		final Map<String, Object> value = asObject(json);
+		final ValueType valueType = asEnum(ValueType.class, value.get("type"));
+		switch (valueType) {
+		case NULL:
+			return null;
+		case ENUM:
+			return toEnum(asString(value.get("class")), asString(value.get("value")));
+		case LIST: {
+			final List<Object> values = new ArrayList<>();
+			for (Object item : asArray(value.get("value"))) {
+				values.add(fromJsonValue(item, depth + 1));
+			}
+			return values;
+		}
+		default:
+			return valueType.parse(asString(value.get("value")));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> asObject(Object json) {
+		if (!(json instanceof Map)) {
+			throw new IllegalArgumentException("Malformed specification JSON, an object is expected.");
+		}
+		return (Map<String, Object>) json;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Object> asArray(Object json) {
+		if (json == null) {
+			return Collections.emptyList();
+		}
+		if (!(json instanceof List)) {
+			throw new IllegalArgumentException("Malformed specification JSON, an array is expected.");
+		}
+		return (List<Object>) json;
+	}
+
+	private static String asString(Object json) {
+		if (!(json instanceof String)) {
+			throw new IllegalArgumentException("Malformed specification JSON, a string is expected.");
+		}
+		return (String) json;
+	}
+
+	private static boolean asBoolean(Object json) {
+		if (json != null && !(json instanceof Boolean)) {
+			throw new IllegalArgumentException("Malformed specification JSON, a boolean is expected.");
+		}
+		return Boolean.TRUE.equals(json);
+	}
+
+	private static <T extends Enum<T>> T asEnum(Class<T> enumClass, Object json) {
+		final String name = asString(json);
+		try {
+			return Enum.valueOf(enumClass, name);
+		}
+		catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Malformed specification JSON, unknown " + enumClass.getSimpleName() + ": " + name, e);
+		}
+	}
+
+	private static <T extends Enum<T>> T asOptionalEnum(Class<T> enumClass, Object json) {
+		return json == null ? null : asEnum(enumClass, json);
+	}
+
+	// ---------------------------------------------------------------- builder
+
+	private static <E> void addCriteria(GenericSpecificationBuilder<E> builder, CriteriaOperation operation, String key, Object value,
+			RelationType relationType, ConditionType conditionType, JoinType joinType) {
+		setConditionType(builder, conditionType);
+		switch (operation) {
+		case JOIN:
+		case JOIN_FETCH:
+			if (joinType == null) {
+				throw new IllegalArgumentException("Malformed specification, join of " + key + " has no join type.");
+			}
+			if (operation == CriteriaOperation.JOIN) {
+				builder.join(key, joinType);
+			}
+			else {
+				builder.joinFetch(key, joinType);
+			}
+			break;
+		case LESS_THAN:
+		case LESS_THAN_OR_EQUAL_TO:
+		case GREATER_THAN:
+		case GREATER_THAN_OR_EQUAL_TO:
+			if (!(value instanceof Comparable)) {
+				throw new IllegalArgumentException("Malformed specification, " + operation + " of " + key + " has no comparable value.");
+			}
+			builder.criteria(key, value, operation, relationType);
+			break;
+		default:
+			builder.criteria(key, value, operation, relationType);
+		}
+	}
+
+	private static <E> void addGroup(GenericSpecificationBuilder<E> builder, ConditionType conditionType, boolean negated,
+			Consumer<GenericSpecificationBuilder<E>> group) {
+		setConditionType(builder, conditionType);
+		if (negated) {
+			builder.not(group);
+		}
+		else {
+			// condition types of the criteria are restored one by one, so the type of the group doesn't matter
+			builder.allOf(group);
+		}
+	}
+
+	private static <E> void setConditionType(GenericSpecificationBuilder<E> builder, ConditionType conditionType) {
+		if (conditionType.equals(ConditionType.OR)) {
+			builder.or();
+		}
+		else {
+			builder.and();
+		}
+	}
+
+	private static <E> void setExecutionOptions(GenericSpecificationBuilder<E> builder, FlushModeType flushMode, EntityGraphType entityGraphType,
+			String[] entityGraphPaths) {
+		if (flushMode != null) {
+			builder.flushMode(flushMode);
+		}
+		if (EntityGraphType.FETCH.equals(entityGraphType)) {
+			builder.fetchGraph(entityGraphPaths);
+		}
+		else if (EntityGraphType.LOAD.equals(entityGraphType)) {
+			builder.loadGraph(entityGraphPaths);
+		}
+	}
+
+	/**
+	 * Classes aren't cached here since a static cache would keep the classes and so the class loaders of redeployed applications,
+	 * class loaders already cache the classes they loaded.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Object toEnum(String className, String name) {
+		final Class enumClass = loadEnumClass(className);
+		return Enum.valueOf(enumClass, name);
+	}
+
+	private static Class<?> loadEnumClass(String className) {
+		try {
+			final Class<?> clazz = ClassUtils.forName(className, ClassUtils.getDefaultClassLoader());
+			if (!clazz.isEnum()) {
+				throw new IllegalArgumentException(className + " is not an enum.");
+			}
+			return clazz;
+		}
+		catch (ClassNotFoundException | LinkageError e) {
+			throw new IllegalArgumentException("Enum class " + className + " not found.", e);
+		}
+	}
+
+	/**
+	 * Types of the values which can be serialized, ordinals are the wire codes hence new types must only be appended
+	 */
+	private enum ValueType {
+		NULL, STRING, BOOLEAN, INTEGER, LONG, DOUBLE, FLOAT, SHORT, BYTE, CHARACTER, BIG_DECIMAL, BIG_INTEGER, UUID, ENUM, DATE,
+		LOCAL_DATE, LOCAL_DATE_TIME, LOCAL_TIME, INSTANT, OFFSET_DATE_TIME, ZONED_DATE_TIME, LIST, SQL_DATE, SQL_TIME, SQL_TIMESTAMP;
+
+		private static final Map<Class<?>, ValueType> TYPES = new HashMap<>();
+
+		static {
+			TYPES.put(String.class, STRING);
+			TYPES.put(Boolean.class, BOOLEAN);
+			TYPES.put(Integer.class, INTEGER);
+			TYPES.put(Long.class, LONG);
+			TYPES.put(Double.class, DOUBLE);
+			TYPES.put(Float.class, FLOAT);
+			TYPES.put(Short.class, SHORT);
+			TYPES.put(Byte.class, BYTE);
+			TYPES.put(Character.class, CHARACTER);
+			TYPES.put(BigDecimal.class, BIG_DECIMAL);
+			TYPES.put(BigInteger.class, BIG_INTEGER);
+			TYPES.put(java.util.UUID.class, UUID);
+			// subclasses of Date are distinct types so that they are deserialized as is, e.g. without losing the nanos of a Timestamp
+			TYPES.put(Date.class, DATE);
+			TYPES.put(java.sql.Date.class, SQL_DATE);
+			TYPES.put(Time.class, SQL_TIME);
+			TYPES.put(Timestamp.class, SQL_TIMESTAMP);
+			TYPES.put(LocalDate.class, LOCAL_DATE);
+			TYPES.put(LocalDateTime.class, LOCAL_DATE_TIME);
+			TYPES.put(LocalTime.class, LOCAL_TIME);
+			TYPES.put(Instant.class, INSTANT);
+			TYPES.put(OffsetDateTime.class, OFFSET_DATE_TIME);
+			TYPES.put(ZonedDateTime.class, ZONED_DATE_TIME);
+		}
+
+		static ValueType of(Object value) {
+			if (value == null) {
+				return NULL;
+			}
+
+			final ValueType valueType = TYPES.get(value.getClass());
+			if (valueType != null) {
+				return valueType;
+			}
+			if (value instanceof Enum) {
+				return ENUM;
+			}
+			if (value instanceof Collection || value instanceof Object[]) {
+				return LIST;
+			}
+			throw new IllegalArgumentException("Value of type " + value.getClass().getName() + " can't be serialized.");
+		}
+
+		static Collection<?> asCollection(Object value) {
+			return value instanceof Collection ? (Collection<?>) value : Arrays.asList((Object[]) value);
+		}
+
+		String format(Object value) {
+			switch (this) {
+			case DATE:
+			case SQL_DATE:
+			case SQL_TIME:
+				return String.valueOf(((Date) value).getTime());
+			case SQL_TIMESTAMP:
+				// not Timestamp#toString which depends on the time zone
+				return ((Timestamp) value).toInstant().toString();
+			default:
+				return String.valueOf(value);
+			}
+		}
+
+		static Timestamp toTimestamp(long time, int nanos) {
+			final Timestamp timestamp = new Timestamp(time);
+			timestamp.setNanos(nanos);
+			return timestamp;
+		}
+
+		/**
+		 * Parses the text formed by {@link #format(Object)}, enums and lists are handled by the codec
+		 */
+		Object parse(String text) {
+			try {
+				switch (this) {
+				case STRING:
+					return text;
+				case BOOLEAN:
+					return Boolean.valueOf(text);
+				case INTEGER:
+					return Integer.valueOf(text);
+				case LONG:
+					return Long.valueOf(text);
+				case DOUBLE:
+					return Double.valueOf(text);
+				case FLOAT:
+					return Float.valueOf(text);
+				case SHORT:
+					return Short.valueOf(text);
+				case BYTE:
+					return Byte.valueOf(text);
+				case CHARACTER:
+					if (text.length() != 1) {
+						throw new IllegalArgumentException("Invalid character: " + text);
+					}
+					return text.charAt(0);
+				case BIG_DECIMAL:
+					return new BigDecimal(text);
+				case BIG_INTEGER:
+					return new BigInteger(text);
+				case UUID:
+					return java.util.UUID.fromString(text);
+				case DATE:
+					return new Date(Long.parseLong(text));
+				case SQL_DATE:
+					return new java.sql.Date(Long.parseLong(text));
+				case SQL_TIME:
+					return new Time(Long.parseLong(text));
+				case SQL_TIMESTAMP:
+					return Timestamp.from(Instant.parse(text));
+				case LOCAL_DATE:
+					return LocalDate.parse(text);
+				case LOCAL_DATE_TIME:
+					return LocalDateTime.parse(text);
+				case LOCAL_TIME:
+					return LocalTime.parse(text);
+				case INSTANT:
+					return Instant.parse(text);
+				case OFFSET_DATE_TIME:
+					return OffsetDateTime.parse(text);
+				case ZONED_DATE_TIME:
+					return ZonedDateTime.parse(text);
+				default:
+					throw new IllegalArgumentException(this + " can't be parsed from text.");
+				}
+			}
+			catch (RuntimeException e) {
+				throw new IllegalArgumentException("Malformed specification value: " + text, e);
+			}
+		}
+	}
+}
@@ -0,0 +1,298 @@
+package com.kodgemisi.specification;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON writer and reader for the readable form of {@link SpecificationCodec}, so that the library doesn't depend on a JSON library.
+ * Objects are represented by {@link Map}, arrays by {@link List} and numbers by {@link Long} or {@link Double}.
+ */
+final class SpecificationJson {
+
+	// well above the depth of the JSON of a specification nested by SpecificationCodec#MAX_DEPTH levels
+	private static final int MAX_DEPTH = 256;
+
+	private final String json;
+
+	private int index;
+
+	private int depth;
+
+	private SpecificationJson(String json) {
+		this.json = json;
+	}
+
+	static String write(Object value) {
+		final StringBuilder builder = new StringBuilder();
+		write(builder, value);
+		return builder.toString();
+	}
+
+	/**
+	 * @throws IllegalArgumentException in case the given string is not a valid JSON or it's nested deeper than {@link #MAX_DEPTH} levels
+	 */
+	static Object read(String json) {
+		final SpecificationJson reader = new SpecificationJson(json);
+		final Object value = reader.readValue();
+		reader.skipWhitespace();
+		if (reader.index != json.length()) {
+			throw reader.error("Unexpected trailing characters");
+		}
+		return value;
+	}
+
+	private static void write(StringBuilder builder, Object value) {
+		if (value == null) {
+			builder.append("null");
+		}
+		else if (value instanceof String) {
+			writeString(builder, (String) value);
+		}
+		else if (value instanceof Number || value instanceof Boolean) {
+			builder.append(value);
+		}
+		else if (value instanceof Map) {
+			builder.append('{');
+			boolean first = true;
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				if (!first) {
+					builder.append(',');
+				}
+				first = false;
+				writeString(builder, String.valueOf(entry.getKey()));
+				builder.append(':');
+				write(builder, entry.getValue());
+			}
+			builder.append('}');
+		}
+		else if (value instanceof List) {
+			builder.append('[');
+			boolean first = true;
+			for (Object item : (List<?>) value) {
+				if (!first) {
+					builder.append(',');
+				}
+				first = false;
+				write(builder, item);
+			}
+			builder.append(']');
+		}
+		else {
+			throw new IllegalArgumentException("Unsupported JSON value: " + value.getClass().getName());
+		}
+	}
+
+	private static void writeString(StringBuilder builder, String value) {
+		builder.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				builder.append("\\\"");
+				break;
+			case '\\':
+				builder.append("\\\\");
+				break;
+			case '\n':
+				builder.append("\\n");
+				break;
+			case '\r':
+				builder.append("\\r");
+				break;
+			case '\t':
+				builder.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					builder.append(String.format("\\u%04x", (int) c));
+				}
+				else {
+					builder.append(c);
+				}
+			}
+		}
+		builder.append('"');
+	}
+
+	private Object readValue() {
+		skipWhitespace();
+		if (index >= json.length()) {
+			throw error("Unexpected end of input");
+		}
+
+		final char c = json.charAt(index);
+		switch (c) {
+		case '{':
+		case '[':
+			if (++depth > MAX_DEPTH) {
+				throw error("Nesting deeper than " + MAX_DEPTH + " levels");
+			}
+			final Object value = c == '{' ? readObject() : readArray();
+			depth--;
+			return value;
+		case '"':
+			return readString();
+		case 't':
+			return readLiteral("true", Boolean.TRUE);
+		case 'f':
+			return readLiteral("false", Boolean.FALSE);
+		case 'n':
+			return readLiteral("null", null);
+		default:
+			return readNumber();
+		}
+	}
+
+	private Map<String, Object> readObject() {
+		final Map<String, Object> object = new LinkedHashMap<>();
+		expect('{');
+		skipWhitespace();
+		if (peek() == '}') {
+			index++;
+			return object;
+		}
+
+		while (true) {
+			skipWhitespace();
+			final String key = readString();
+			skipWhitespace();
+			expect(':');
+			object.put(key, readValue());
+			skipWhitespace();
+			if (peek() == ',') {
+				index++;
+				continue;
+			}
+			expect('}');
+			return object;
+		}
+	}
+
+	private List<Object> readArray() {
+		final List<Object> array = new ArrayList<>();
+		expect('[');
+		skipWhitespace();
+		if (peek() == ']') {
+			index++;
+			return array;
+		}
+
+		while (true) {
+			array.add(readValue());
+			skipWhitespace();
+			if (peek() == ',') {
+				index++;
+				continue;
+			}
+			expect(']');
+			return array;
+		}
+	}
+
+	private String readString() {
+		expect('"');
+		final StringBuilder builder = new StringBuilder();
+		while (true) {
+			final char c = next();
+			if (c == '"') {
+				return builder.toString();
+			}
+			if (c != '\\') {
+				builder.append(c);
+				continue;
+			}
+
+			final char escaped = next();
+			switch (escaped) {
+			case 'n':
+				builder.append('\n');
+				break;
+			case 'r':
+				builder.append('\r');
+				break;
+			case 't':
+				builder.append('\t');
+				break;
+			case 'b':
+				builder.append('\b');
+				break;
+			case 'f':
+				builder.append('\f');
+				break;
+			case 'u':
+				if (index + 4 > json.length()) {
+					throw error("Invalid unicode escape");
+				}
+				try {
+					builder.append((char) Integer.parseInt(json.substring(index, index + 4), 16));
+				}
+				catch (NumberFormatException e) {
+					throw error("Invalid unicode escape");
+				}
+				index += 4;
+				break;
+			default:
+				// covers quote, backslash and slash
+				builder.append(escaped);
+			}
+		}
+	}
+
+	private Object readLiteral(String literal, Object value) {
+		if (!json.startsWith(literal, index)) {
+			throw error("Unexpected character");
+		}
+		index += literal.length();
+		return value;
+	}
+
+	private Number readNumber() {
+		final int start = index;
+		while (index < json.length() && "+-0123456789.eE".indexOf(json.charAt(index)) >= 0) {
+			index++;
+		}
+
+		final String number = json.substring(start, index);
+		try {
+			if (number.contains(".") || number.contains("e") || number.contains("E")) {
+				return Double.valueOf(number);
+			}
+			return Long.valueOf(number);
+		}
+		catch (NumberFormatException e) {
+			throw error("Unexpected character");
+		}
+	}
+
+	private void skipWhitespace() {
+		while (index < json.length() && Character.isWhitespace(json.charAt(index))) {
+			index++;
+		}
+	}
+
+	private char peek() {
+		if (index >= json.length()) {
+			throw error("Unexpected end of input");
+		}
+		return json.charAt(index);
+	}
+
+	private char next() {
+		final char c = peek();
+		index++;
+		return c;
+	}
+
+	private void expect(char expected) {
+		if (next() != expected) {
+			index--;
+			throw error("Expected '" + expected + "'");
+		}
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at position " + index + " of the specification JSON.");
+	}
+}
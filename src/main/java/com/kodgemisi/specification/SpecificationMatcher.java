@@ -0,0 +1,330 @@
+package com.kodgemisi.specification;
+
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import javax.persistence.criteria.Subquery;
+import javax.persistence.metamodel.EntityType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * Finds out which of the given specifications match which of the given entities by using as few queries as possible,
+ * e.g. to check a batch of newly created entities against saved searches. For example:
+ * </p>
+ *
+ * <blockquote><pre>
+ * 		SpecificationMatcher&lt;Person&gt; matcher = new SpecificationMatcher&lt;&gt;(entityManager, Person.class);
+ * 		List&lt;Set&lt;Long&gt;&gt; matches = matcher.matchIds(savedSearches, personIds);
+ * </pre></blockquote>
+ *
+ * <p>
+ * Specifications are evaluated by a single query selecting a {@code CASE WHEN} flag per specification. Specifications joining
+ * relations, including custom ones, are evaluated by a correlated {@code EXISTS} subquery each, so that their joins don't multiply
+ * the rows of the query. Large sets of specifications and ids are split into chunks. Optionally {@link #match(List, Collection)}
+ * can evaluate the specifications in memory, see {@link #inMemory(boolean)}.
+ * </p>
+ *
+ * <p>
+ * Results are returned at the indexes of the given specifications, so the same instance can be given more than once,
+ * e.g. the shared {@link GenericSpecificationContainer#matchAll()} built for every saved search without an active filter.
+ * </p>
+ *
+ * Specifications with {@link GenericSpecificationBuilder#joinFetch(String)} can't be matched since fetching is meaningless here.
+ *
+ * @param <E> entity type
+ */
+public class SpecificationMatcher<E> {
+
+	private static final int DEFAULT_SPECIFICATION_CHUNK_SIZE = 50;
+
+	// kept below the IN list limit of databases like Oracle
+	private static final int DEFAULT_ID_CHUNK_SIZE = 500;
+
+	private final EntityManager entityManager;
+
+	private final Class<E> domainClass;
+
+	private final String idAttributeName;
+
+	private int specificationChunkSize;
+
+	private int idChunkSize;
+
+	private boolean inMemory;
+
+	/**
+	 * @throws IllegalArgumentException in case the given class is not an entity or doesn't have a single id attribute
+	 */
+	public SpecificationMatcher(EntityManager entityManager, Class<E> domainClass) {
+		final EntityType<E> entityType = entityManager.getMetamodel().entity(domainClass);
+		if (!entityType.hasSingleIdAttribute()) {
+			throw new IllegalArgumentException("Only entities with a single id attribute are supported.");
+		}
+
+		this.entityManager = entityManager;
+		this.domainClass = domainClass;
+		this.idAttributeName = entityType.getId(entityType.getIdType().getJavaType()).getName();
+		this.specificationChunkSize = DEFAULT_SPECIFICATION_CHUNK_SIZE;
+		this.idChunkSize = DEFAULT_ID_CHUNK_SIZE;
+	}
+
+	/**
+	 * @param specificationChunkSize maximum number of specifications evaluated by a single query
+	 * @return
+	 */
+	public SpecificationMatcher<E> specificationChunkSize(int specificationChunkSize) {
+		if (specificationChunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be positive.");
+		}
+		this.specificationChunkSize = specificationChunkSize;
+		return this;
+	}
+
+	/**
+	 * @param idChunkSize maximum number of ids given to a single query
+	 * @return
+	 */
+	public SpecificationMatcher<E> idChunkSize(int idChunkSize) {
+		if (idChunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be positive.");
+		}
+		this.idChunkSize = idChunkSize;
+		return this;
+	}
+
+	/**
+	 * Enables evaluating the specifications built by {@link GenericSpecificationBuilder} in memory by {@link #match(List, Collection)},
+	 * which is disabled by default. Results may differ from the database's, since strings are compared regardless of the collation
+	 * of the columns, e.g. case insensitive equality of MySQL isn't applied. Specifications which can't be evaluated in memory,
+	 * e.g. custom ones or the ones using relations which aren't loaded, are still matched by the database.
+	 *
+	 * @param inMemory
+	 * @return
+	 */
+	public SpecificationMatcher<E> inMemory(boolean inMemory) {
+		this.inMemory = inMemory;
+		return this;
+	}
+
+	/**
+	 * Matches the given specifications against the entities with the given ids by querying the database.
+	 * The same specification instance, e.g. the shared {@link GenericSpecificationContainer#matchAll()}, may be given more than once,
+	 * it's evaluated once.
+	 *
+	 * @param specifications
+	 * @param ids            ids of the candidate entities
+	 * @return ids of the matching entities per specification, at the same index as the given specification
+	 * @throws IllegalArgumentException in case a specification fetches a relation
+	 */
+	public <I> List<Set<I>> matchIds(List<? extends Specification<E>> specifications, Collection<I> ids) {
+		final List<Specification<E>> distinctSpecifications = distinct(specifications);
+		final List<Set<I>> distinctMatches = new ArrayList<>(distinctSpecifications.size());
+		for (int i = 0; i < distinctSpecifications.size(); i++) {
+			distinctMatches.add(new HashSet<>());
+		}
+
+		if (!ids.isEmpty()) {
+			final List<I> idList = new ArrayList<>(new HashSet<>(ids));
+			final Set<Specification<E>> joiningSpecifications = findJoiningSpecifications(distinctSpecifications);
+			for (int i = 0; i < distinctSpecifications.size(); i += specificationChunkSize) {
+				final int chunkEnd = Math.min(i + specificationChunkSize, distinctSpecifications.size());
+				for (List<I> idChunk : chunk(idList, idChunkSize)) {
+					matchChunk(distinctSpecifications.subList(i, chunkEnd), joiningSpecifications, idChunk, distinctMatches.subList(i, chunkEnd));
+				}
+			}
+		}
+		return alignToInput(specifications, distinctSpecifications, distinctMatches, HashSet::new);
+	}
+
+	/**
+	 * Matches the given specifications against the given entities by {@link #matchIds(List, Collection)}, or in memory
+	 * if it's enabled by {@link #inMemory(boolean)}. Evaluating in memory never loads a relation, hence relations used by
+	 * the specifications should be loaded beforehand, otherwise they are matched by the database.
+	 *
+	 * @param specifications
+	 * @param entities       persisted candidate entities
+	 * @return matching entities per specification, at the same index as the given specification and in the order of the given entities
+	 */
+	public List<List<E>> match(List<? extends Specification<E>> specifications, Collection<E> entities) {
+		final List<Specification<E>> distinctSpecifications = distinct(specifications);
+		final List<List<E>> distinctMatches = new ArrayList<>(distinctSpecifications.size());
+		final List<Integer> databaseIndexes = new ArrayList<>();
+		final PersistenceUnitUtil persistenceUnitUtil = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+
+		for (Specification<E> specification : distinctSpecifications) {
+			final java.util.function.Predicate<E> predicate = inMemory ? InMemorySpecification.compile(specification, persistenceUnitUtil) : null;
+			final List<E> matchingEntities = new ArrayList<>();
+			distinctMatches.add(matchingEntities);
+			if (predicate == null) {
+				databaseIndexes.add(distinctMatches.size() - 1);
+				continue;
+			}
+
+			try {
+				for (E entity : entities) {
+					if (predicate.test(entity)) {
+						matchingEntities.add(entity);
+					}
+				}
+			}
+			catch (InMemorySpecification.NotCompilableException e) {
+				matchingEntities.clear();
+				databaseIndexes.add(distinctMatches.size() - 1);
+			}
+		}
+
+		if (!databaseIndexes.isEmpty()) {
+			// entities aren't used as keys since their equals and hashCode can't be relied on
+			final List<E> entityList = new ArrayList<>(entities);
+			final List<Object> ids = new ArrayList<>(entityList.size());
+			for (E entity : entityList) {
+				ids.add(persistenceUnitUtil.getIdentifier(entity));
+			}
+
+			final List<Specification<E>> databaseSpecifications = new ArrayList<>(databaseIndexes.size());
+			for (int index : databaseIndexes) {
+				databaseSpecifications.add(distinctSpecifications.get(index));
+			}
+			final List<Set<Object>> matchingIds = matchIds(databaseSpecifications, ids);
+			for (int i = 0; i < databaseIndexes.size(); i++) {
+				final List<E> matchingEntities = distinctMatches.get(databaseIndexes.get(i));
+				for (int j = 0; j < entityList.size(); j++) {
+					if (matchingIds.get(i).contains(ids.get(j))) {
+						matchingEntities.add(entityList.get(j));
+					}
+				}
+			}
+		}
+		return alignToInput(specifications, distinctSpecifications, distinctMatches, ArrayList::new);
+	}
+
+	/**
+	 * Selects the id and a flag per specification for each candidate. Specifications joining relations are evaluated by
+	 * correlated subqueries, so their joins neither multiply the rows nor each other, and an entity matches such a specification
+	 * if any of its joined rows does.
+	 *
+	 * @param matches ids of the matching entities, at the same index as the specification
+	 */
+	@SuppressWarnings("unchecked")
+	private <I> void matchChunk(List<Specification<E>> specifications, Set<Specification<E>> joiningSpecifications, List<I> ids,
+			List<Set<I>> matches) {
+		final CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		final CriteriaQuery<Object[]> query = criteriaBuilder.createQuery(Object[].class);
+		final Root<E> root = query.from(domainClass);
+		final Path<Object> id = root.get(idAttributeName);
+
+		final List<Selection<?>> selections = new ArrayList<>(specifications.size() + 1);
+		selections.add(id);
+		for (Specification<E> specification : specifications) {
+			final Predicate predicate = joiningSpecifications.contains(specification) ?
+					criteriaBuilder.exists(createSubquery(specification, root, query, criteriaBuilder)) :
+					specification.toPredicate(root, query, criteriaBuilder);
+			selections.add(criteriaBuilder.<Integer>selectCase()
+								   .when(predicate == null ? criteriaBuilder.conjunction() : predicate, 1)
+								   .otherwise(0));
+		}
+		query.multiselect(selections).where(id.in(ids));
+
+		final TypedQuery<Object[]> typedQuery = entityManager.createQuery(query);
+		for (Specification<E> specification : specifications) {
+			GenericSpecificationExecutor.bindParameters(typedQuery, specification);
+		}
+
+		for (Object[] row : typedQuery.getResultList()) {
+			for (int i = 0; i < specifications.size(); i++) {
+				if (((Number) row[i + 1]).intValue() == 1) {
+					matches.get(i).add((I) row[0]);
+				}
+			}
+		}
+	}
+
+	private Subquery<E> createSubquery(Specification<E> specification, Root<E> root, CriteriaQuery<?> query, CriteriaBuilder criteriaBuilder) {
+		final Subquery<E> subquery = query.subquery(domainClass);
+		final Root<E> subqueryRoot = subquery.from(domainClass);
+		final Predicate correlation = criteriaBuilder.equal(subqueryRoot, root);
+		final Predicate predicate = specification.toPredicate(subqueryRoot, query, criteriaBuilder);
+		return subquery.select(subqueryRoot).where(predicate == null ? correlation : criteriaBuilder.and(correlation, predicate));
+	}
+
+	/**
+	 * Finds out the specifications creating joins by generating their predicates for a throwaway query
+	 */
+	private Set<Specification<E>> findJoiningSpecifications(List<Specification<E>> specifications) {
+		final CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		final Set<Specification<E>> joiningSpecifications = new HashSet<>();
+
+		for (Specification<E> specification : specifications) {
+			final CriteriaQuery<Object[]> query = criteriaBuilder.createQuery(Object[].class);
+			final Root<E> root = query.from(domainClass);
+			specification.toPredicate(root, query, criteriaBuilder);
+
+			if (!root.getFetches().isEmpty()) {
+				throw new IllegalArgumentException("Specifications fetching relations can't be matched, use fetchGraph instead of joinFetch.");
+			}
+			if (!root.getJoins().isEmpty()) {
+				joiningSpecifications.add(specification);
+			}
+		}
+		return joiningSpecifications;
+	}
+
+	/**
+	 * @return the given specifications without the repeated instances, in the given order
+	 */
+	private List<Specification<E>> distinct(List<? extends Specification<E>> specifications) {
+		final Set<Specification<E>> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+		final List<Specification<E>> distinctSpecifications = new ArrayList<>(specifications.size());
+		for (Specification<E> specification : specifications) {
+			if (seen.add(specification)) {
+				distinctSpecifications.add(specification);
+			}
+		}
+		return distinctSpecifications;
+	}
+
+	/**
+	 * Lays out the results of the distinct specifications at the indexes of the given specifications,
+	 * a repeated instance gets a copy so that the results can be modified independently
+	 */
+	private static <S, R extends Collection<?>> List<R> alignToInput(List<? extends S> specifications, List<S> distinctSpecifications,
+			List<R> distinctResults, Function<R, R> copier) {
+		final Map<S, R> resultsBySpecification = new IdentityHashMap<>();
+		for (int i = 0; i < distinctSpecifications.size(); i++) {
+			resultsBySpecification.put(distinctSpecifications.get(i), distinctResults.get(i));
+		}
+
+		final Set<S> used = Collections.newSetFromMap(new IdentityHashMap<>());
+		final List<R> results = new ArrayList<>(specifications.size());
+		for (S specification : specifications) {
+			final R result = resultsBySpecification.get(specification);
+			results.add(used.add(specification) ? result : copier.apply(result));
+		}
+		return results;
+	}
+
+	private static <T> List<List<T>> chunk(List<T> list, int chunkSize) {
+		final List<List<T>> chunks = new ArrayList<>();
+		for (int i = 0; i < list.size(); i += chunkSize) {
+			chunks.add(list.subList(i, Math.min(i + chunkSize, list.size())));
+		}
+		return chunks;
+	}
+}
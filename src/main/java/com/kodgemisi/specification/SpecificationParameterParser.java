@@ -0,0 +1,236 @@
+package com.kodgemisi.specification;
+
+import javax.persistence.metamodel.Metamodel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * Translates request parameters to {@link GenericSpecificationBuilder} calls. A parameter name is either a field path
+ * or a field path followed by an operation, and its value is converted to the type of the field. For example:
+ * </p>
+ *
+ * <blockquote><pre>
+ * 		// status=ACTIVE&amp;createdAt.gte=2019-01-01T00:00:00Z&amp;addresses.city.like=ist
+ * 		SpecificationParameterParser&lt;Person&gt; parser = SpecificationParameterParser.of(entityManager.getMetamodel(), Person.class)
+ * 			.filterable("status", "createdAt")
+ * 			.filterable("addresses.city", FilterOperation.EQ, FilterOperation.LIKE);
+ *
+ * 		Specification&lt;Person&gt; specification = parser.parse(parameters).build();
+ * </pre></blockquote>
+ *
+ * <p>
+ * Supported operations are {@code eq} (default), {@code like}, {@code in} (comma separated values), {@code gt}, {@code gte},
+ * {@code lt}, {@code lte}, {@code null} and {@code notnull}, see {@link FilterOperation}. Blank values are ignored since the filters are optional.
+ * Wildcards in {@code like} values are matched literally.
+ * </p>
+ *
+ * <p>
+ * Only the fields marked as {@link #filterable(String...)}, presumably the indexed ones, are allowed and only with the operations
+ * allowed for them, {@link FilterOperation#indexable()} by default. Any other parameter, except the ignored ones
+ * ({@code page}, {@code size} and {@code sort} by default), causes an {@link IllegalArgumentException}
+ * before a query reaches to the database. A parser is expected to be configured once and then it can be shared between threads.
+ * </p>
+ *
+ * @param <E> entity type
+ */
+public class SpecificationParameterParser<E> {
+
+	private static final String OPERATION_DELIMITER = ".";
+
+	private static final String IN_DELIMITER = ",";
+
+	private static final Map<String, FilterOperation> OPERATIONS = new HashMap<>();
+
+	static {
+		for (FilterOperation operation : FilterOperation.values()) {
+			OPERATIONS.put(operation.getSuffix(), operation);
+		}
+	}
+
+	private final FieldSchema<E> schema;
+
+	private final Map<String, FilterableField> filterableFields;
+
+	private final Set<String> ignoredParameters;
+
+	private SpecificationParameterParser(FieldSchema<E> schema) {
+		this.schema = schema;
+		this.filterableFields = new HashMap<>();
+		this.ignoredParameters = new HashSet<>(Arrays.asList("page", "size", "sort"));
+	}
+
+	public static <E> SpecificationParameterParser<E> of(Metamodel metamodel, Class<E> clazz) {
+		return of(FieldSchema.of(metamodel, clazz));
+	}
+
+	public static <E> SpecificationParameterParser<E> of(FieldSchema<E> schema) {
+		return new SpecificationParameterParser<>(schema);
+	}
+
+	/**
+	 * Allows filtering by the given field paths with {@link FilterOperation#indexable()} operations
+	 *
+	 * @param paths field paths, e.g. {@code name} or {@code addresses.city}
+	 * @return
+	 * @throws IllegalArgumentException in case a path is not in the {@link FieldSchema} of the entity
+	 */
+	public SpecificationParameterParser<E> filterable(String... paths) {
+		for (String path : paths) {
+			filterableFields.put(path, getSchemaField(path));
+		}
+		return this;
+	}
+
+	/**
+	 * Allows filtering by the given field path whose values are converted by the given converter instead of the default one
+	 *
+	 * @param path      field path
+	 * @param converter converts a parameter value to the type of the field
+	 * @return
+	 * @throws IllegalArgumentException in case the path is not in the {@link FieldSchema} of the entity
+	 */
+	public SpecificationParameterParser<E> filterable(String path, Function<String, ?> converter) {
+		final FilterableField field = filterableFields.containsKey(path) ? filterableFields.get(path) : getSchemaField(path);
+		filterableFields.put(path, field.withConverter(converter));
+		return this;
+	}
+
+	/**
+	 * Allows filtering by the given field path with the given operations only, e.g. to allow {@link FilterOperation#LIKE}
+	 * on a field having a full text index or to allow only {@link FilterOperation#EQ} on a field having a hash index
+	 *
+	 * @param path       field path
+	 * @param operation  allowed operation
+	 * @param operations other allowed operations
+	 * @return
+	 * @throws IllegalArgumentException in case the path is not in the {@link FieldSchema} of the entity
+	 */
+	public SpecificationParameterParser<E> filterable(String path, FilterOperation operation, FilterOperation... operations) {
+		final FilterableField field = filterableFields.containsKey(path) ? filterableFields.get(path) : getSchemaField(path);
+		filterableFields.put(path, field.withOperations(EnumSet.of(operation, operations)));
+		return this;
+	}
+
+	/**
+	 * Parameters with the given names are skipped by the parser, e.g. paging parameters
+	 *
+	 * @param parameterNames
+	 * @return
+	 */
+	public SpecificationParameterParser<E> ignore(String... parameterNames) {
+		ignoredParameters.addAll(Arrays.asList(parameterNames));
+		return this;
+	}
+
+	/**
+	 * Creates a {@link GenericSpecificationBuilder} having a criteria for each parameter, so that it can be chained further.
+	 *
+	 * @param parameters request parameters
+	 * @return
+	 * @throws IllegalArgumentException in case a parameter is not filterable or its value can't be converted
+	 */
+	public GenericSpecificationBuilder<E> parse(Map<String, String> parameters) {
+		final GenericSpecificationBuilder<E> builder = GenericSpecificationBuilder.of(schema.getEntityClass());
+
+		for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+			final String name = parameter.getKey();
+			final String value = parameter.getValue();
+			if (ignoredParameters.contains(name) || value == null || value.trim().isEmpty()) {
+				continue;
+			}
+
+			String path = name;
+			FilterOperation operation = FilterOperation.EQ;
+
+			final int delimiterIndex = name.lastIndexOf(OPERATION_DELIMITER);
+			if (delimiterIndex > 0 && !filterableFields.containsKey(name)) {
+				final FilterOperation suffixOperation = OPERATIONS.get(name.substring(delimiterIndex + 1));
+				if (suffixOperation != null) {
+					path = name.substring(0, delimiterIndex);
+					operation = suffixOperation;
+				}
+			}
+
+			final FilterableField field = filterableFields.get(path);
+			if (field == null) {
+				throw new IllegalArgumentException("Filtering by '" + name + "' is not allowed.");
+			}
+			if (!field.getOperations().contains(operation)) {
+				throw new IllegalArgumentException("'" + operation.getSuffix() + "' is not allowed for '" + path + "'.");
+			}
+
+			addCriteria(builder, field, operation.getCriteriaOperation(), value.trim());
+		}
+		return builder;
+	}
+
+	private void addCriteria(GenericSpecificationBuilder<E> builder, FilterableField field, CriteriaOperation operation, String value) {
+		switch (operation) {
+		case IS_NULL:
+		case IS_NOT_NULL: {
+			final boolean negated = !Boolean.parseBoolean(value);
+			if (negated) {
+				operation = operation == CriteriaOperation.IS_NULL ? CriteriaOperation.IS_NOT_NULL : CriteriaOperation.IS_NULL;
+			}
+			builder.criteria(field.getPath(), null, operation, field.getRelationType());
+			return;
+		}
+		case LIKE: {
+			if (!field.getJavaType().equals(String.class)) {
+				throw new IllegalArgumentException("'like' is not applicable to '" + field.getPath() + "'.");
+			}
+			builder.criteria(field.getPath(), value, operation, field.getRelationType());
+			return;
+		}
+		case IN: {
+			final List<Object> values = new ArrayList<>();
+			for (String item : value.split(IN_DELIMITER)) {
+				if (!item.trim().isEmpty()) {
+					values.add(convert(field, item.trim()));
+				}
+			}
+			if (!values.isEmpty()) {
+				builder.criteria(field.getPath(), values, operation, field.getRelationType());
+			}
+			return;
+		}
+		case LESS_THAN:
+		case LESS_THAN_OR_EQUAL_TO:
+		case GREATER_THAN:
+		case GREATER_THAN_OR_EQUAL_TO: {
+			if (!field.isComparable()) {
+				throw new IllegalArgumentException("Comparison is not applicable to '" + field.getPath() + "'.");
+			}
+			builder.criteria(field.getPath(), convert(field, value), operation, field.getRelationType());
+			return;
+		}
+		default:
+			builder.criteria(field.getPath(), convert(field, value), operation, field.getRelationType());
+		}
+	}
+
+	private Object convert(FilterableField field, String value) {
+		try {
+			return field.getConverter().apply(value);
+		}
+		catch (RuntimeException e) {
+			throw new IllegalArgumentException("Invalid value '" + value + "' for '" + field.getPath() + "'.", e);
+		}
+	}
+
+	private FilterableField getSchemaField(String path) {
+		final FilterableField field = schema.getField(path);
+		if (field == null) {
+			throw new IllegalArgumentException("'" + path + "' is not a filterable field of " + schema.getEntityClass().getName());
+		}
+		return field;
+	}
+}
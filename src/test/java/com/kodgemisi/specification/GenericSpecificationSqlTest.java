@@ -0,0 +1,471 @@
+package com.kodgemisi.specification;
+
+import com.kodgemisi.specification.entity.Person;
+import org.hibernate.Session;
+import org.hibernate.query.Query;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.EntityManager;
+import javax.persistence.FlushModeType;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.JoinType;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs specifications against H2 by Hibernate and asserts the shape of the generated SQL, so that changes causing
+ * extra statements, duplicate joins or unnecessary distinct are caught.
+ */
+public class GenericSpecificationSqlTest extends SqlTestSupport {
+
+	private GenericSpecificationExecutor<Person> executor;
+
+	@Before
+	public void setUp() {
+		executor = new GenericSpecificationExecutor<>(entityManager, Person.class);
+	}
+
+	@Test
+	public void equalsOnOwnFieldDoesNotJoin() {
+		final List<Person> people = executor.findAll(GenericSpecificationBuilder.of(Person.class).equals("name", "Ali").build());
+
+		final String sql = singleStatement();
+		assertEquals(0, SqlStatementRecorder.joinCount(sql));
+		assertFalse(SqlStatementRecorder.isDistinct(sql));
+		assertEquals(1, people.size());
+		assertEquals(1, statistics.getEntityLoadCount());
+	}
+
+	@Test
+	public void criteriaOnSameToManyRelationApplyToAnyElement() {
+		// Ali has an address in Istanbul and another one of type work
+		final List<Person> people = executor.findAll(GenericSpecificationBuilder.of(Person.class)
+																 .equals("addresses.city", "Istanbul", RelationType.TO_MANY)
+																 .equals("addresses.type", "work", RelationType.TO_MANY)
+																 .build());
+
+		final String sql = singleStatement();
+		assertEquals(2, SqlStatementRecorder.joinCount(sql));
+		assertEquals(2, people.size());
+	}
+
+	@Test
+	public void criteriaOfGroupOnSameToManyRelationShareJoin() {
+		final List<Person> people = executor.findAll(GenericSpecificationBuilder.of(Person.class)
+																 .allOf(b -> b.equals("addresses.city", "Istanbul", RelationType.TO_MANY)
+																		 .equals("addresses.type", "work", RelationType.TO_MANY))
+																 .build());
+
+		final String sql = singleStatement();
+		assertEquals(1, SqlStatementRecorder.joinCount(sql));
+		assertFalse(SqlStatementRecorder.isDistinct(sql));
+		assertEquals(1, people.size());
+		assertEquals("Veli", people.get(0).getName());
+	}
+
+	@Test
+	public void toOneJoinHavingOnConditionIsNotReused() {
+		final List<Person> people = executor.findAll(GenericSpecificationBuilder.of(Person.class)
+																 .custom((root, query, cb) -> {
+																	 final Join<Person, ?> department = root.join("department", JoinType.LEFT);
+																	 department.on(cb.equal(department.get("name"), "Sales"));
+																	 return null;
+																 })
+																 .anyOf(b -> b.equals("department.name", "IT", RelationType.TO_ONE))
+																 .build());
+
+		assertEquals(2, SqlStatementRecorder.joinCount(singleStatement()));
+		assertEquals(Arrays.asList("Fatma", "Veli"), names(people));
+	}
+
+	@Test
+	public void negatedGroupOnToManyRelationMatchesWhenNoElementMatches() {
+		final List<Person> people = executor.findAll(GenericSpecificationBuilder.of(Person.class)
+																 .not(b -> b.equals("addresses.city", "Istanbul", RelationType.TO_MANY))
+																 .build());
+
+		final String sql = singleStatement();
+		assertTrue(sql, sql.contains("not (exists (select"));
+		assertEquals(1, SqlStatementRecorder.joinCount(sql));
+		assertEquals(Arrays.asList("Ayse", "Fatma"), names(people));
+	}
+
+	@Test
+	public void negatedGroupOnToManyRelationAppliesToSameElement() {
+		// Ali has no address in Istanbul of type work
+		final List<Person> people = executor.findAll(GenericSpecificationBuilder.of(Person.class)
+																 .not(b -> b.equals("addresses.city", "Istanbul", RelationType.TO_MANY)
+																		 .equals("addresses.type", "work", RelationType.TO_MANY))
+																 .greaterThan("age", 20)
+																 .build());
+
+		final String sql = singleStatement();
+		assertEquals(1, SqlStatementRecorder.joinCount(sql));
+		assertEquals(Arrays.asList("Ali", "Ayse"), names(people));
+	}
+
+	@Test
+	public void criteriaOnDifferentRelationsJoinOncePerRelation() {
+		final List<Person> people = executor.findAll(GenericSpecificationBuilder.of(Person.class)
+																 .equals("department.name", "Sales", RelationType.TO_ONE)
+																 .like("department.name", "sal", RelationType.TO_ONE)
+																 .equals("addresses.city", "Istanbul", RelationType.TO_MANY)
+																 .build());
+
+		final String sql = singleStatement();
+		assertEquals(2, SqlStatementRecorder.joinCount(sql));
+		assertEquals(1, people.size());
+		assertEquals("Ali", people.get(0).getName());
+	}
+
+	@Test
+	public void nestedGroupsAreExecutedBySingleQuery() {
+		final List<Person> people = executor.findAll(GenericSpecificationBuilder.of(Person.class)
+																 .anyOf(b -> b.equals("name", "Ali").equals("name", "Veli"))
+																 .anyOf(b -> b.equals("addresses.city", "Istanbul", RelationType.TO_MANY)
+																		 .greaterThan("age", 35))
+																 .build());
+
+		final String sql = singleStatement();
+		assertEquals(1, SqlStatementRecorder.joinCount(sql));
+		assertFalse(SqlStatementRecorder.isDistinct(sql));
+		assertEquals(2, people.size());
+	}
+
+	@Test
+	public void negatedGroup() {
+		final List<Person> people = executor.findAll(GenericSpecificationBuilder.of(Person.class)
+																 .not(b -> b.equals("department.name", "Sales", RelationType.TO_ONE))
+																 .build());
+
+		final String sql = singleStatement();
+		assertEquals(1, SqlStatementRecorder.joinCount(sql));
+		assertEquals(2, people.size());
+	}
+
+	@Test
+	public void likeIsCaseInsensitive() {
+		final List<Person> people = executor.findAll(GenericSpecificationBuilder.of(Person.class).like("name", "AL").build());
+
+		final String sql = singleStatement();
+		assertEquals(0, SqlStatementRecorder.joinCount(sql));
+		assertTrue(sql.contains("lower("));
+		assertEquals(1, people.size());
+	}
+
+	@Test
+	public void joinFetchIsNotAppliedToCountQuery() {
+		final Page<Person> page = executor.findAll(GenericSpecificationBuilder.of(Person.class).joinFetch("addresses").build(),
+												   PageRequest.of(0, 1, Sort.by("name")));
+
+		final List<String> statements = SqlStatementRecorder.statements();
+		assertEquals(2, statements.size());
+		assertEquals(2, statistics.getPrepareStatementCount());
+
+		final String select = statements.get(0);
+		assertTrue(SqlStatementRecorder.isDistinct(select));
+		assertEquals(1, SqlStatementRecorder.joinCount(select));
+
+		final String count = statements.get(1);
+		assertTrue(count.contains("count(distinct"));
+		assertEquals(1, SqlStatementRecorder.joinCount(count));
+		assertFalse(count.contains("city"));
+
+		// people without addresses are filtered by the inner join
+		assertEquals(3, page.getTotalElements());
+		assertEquals(1, page.getContent().size());
+	}
+
+	@Test
+	public void fetchGraphLoadsRelationWithoutExtraQueries() {
+		final List<Person> people = executor.findAll(GenericSpecificationBuilder.of(Person.class).fetchGraph("department").build());
+		people.forEach(person -> person.getDepartment().getName());
+
+		final String sql = singleStatement();
+		assertEquals(1, SqlStatementRecorder.joinCount(sql));
+		assertFalse(SqlStatementRecorder.isDistinct(sql));
+		assertEquals(4, people.size());
+		assertEquals(6, statistics.getEntityLoadCount());
+	}
+
+	@Test
+	public void fetchGraphLoadsCollectionsWithoutJoinMultiplication() {
+		final List<Person> people = executor.findAll(GenericSpecificationBuilder.of(Person.class).fetchGraph("addresses").build(), Sort.by("name"));
+
+		final List<String> statements = SqlStatementRecorder.statements();
+		assertEquals(statements.toString(), 2, statements.size());
+		assertEquals(0, SqlStatementRecorder.joinCount(statements.get(0)));
+		assertFalse(SqlStatementRecorder.isDistinct(statements.get(0)));
+		assertEquals(1, SqlStatementRecorder.joinCount(statements.get(1)));
+
+		assertEquals(4, people.size());
+		assertEquals(4, new HashSet<>(people).size());
+
+		final PersistenceUnitUtil persistenceUnitUtil = entityManagerFactory.getPersistenceUnitUtil();
+		people.forEach(person -> assertTrue(persistenceUnitUtil.isLoaded(person, "addresses")));
+		assertEquals(Arrays.asList(2, 0, 1, 1), people.stream().map(person -> person.getAddresses().size()).collect(Collectors.toList()));
+		assertEquals(2, statistics.getPrepareStatementCount());
+	}
+
+	@Test
+	public void fetchGraphWithCollectionIsPagedByDatabase() {
+		final Page<Person> page = executor.findAll(GenericSpecificationBuilder.of(Person.class).fetchGraph("department", "addresses").build(),
+												   PageRequest.of(0, 2, Sort.by("name")));
+
+		final List<String> statements = SqlStatementRecorder.statements();
+		assertEquals(statements.toString(), 3, statements.size());
+
+		final String select = statements.get(0);
+		assertEquals(1, SqlStatementRecorder.joinCount(select));
+		assertFalse(SqlStatementRecorder.isDistinct(select));
+		assertTrue(select.contains(" limit "));
+
+		assertEquals(1, SqlStatementRecorder.joinCount(statements.get(1)));
+		assertTrue(statements.get(2).startsWith("select count("));
+
+		assertEquals(4, page.getTotalElements());
+		assertEquals(Arrays.asList("Ali", "Ayse"), page.getContent().stream().map(Person::getName).collect(Collectors.toList()));
+		page.getContent().forEach(person -> {
+			person.getDepartment().getName();
+			person.getAddresses().size();
+		});
+		assertEquals(3, statistics.getPrepareStatementCount());
+	}
+
+	@Test
+	public void toOneRelationsOfCollectionElementsAreFetchedByCollectionQuery() {
+		final List<Person> people = executor.findAll(GenericSpecificationBuilder.of(Person.class)
+																 .equals("name", "Ali")
+																 .fetchGraph("addresses.person.department")
+																 .build());
+
+		final List<String> statements = SqlStatementRecorder.statements();
+		assertEquals(statements.toString(), 2, statements.size());
+		assertEquals(0, SqlStatementRecorder.joinCount(statements.get(0)));
+		assertEquals(3, SqlStatementRecorder.joinCount(statements.get(1)));
+
+		people.get(0).getAddresses().forEach(address -> address.getPerson().getDepartment().getName());
+		assertEquals(2, statistics.getPrepareStatementCount());
+	}
+
+	@Test
+	public void collectionsOfDetachedResultsAreRejected() {
+		final GenericSpecificationExecutor<Person> detachingExecutor = new GenericSpecificationExecutor<>(detachingEntityManager(), Person.class);
+
+		final List<Person> people = detachingExecutor.findAll(GenericSpecificationBuilder.of(Person.class).fetchGraph("department").build());
+		assertEquals(4, people.size());
+
+		try {
+			detachingExecutor.findAll(GenericSpecificationBuilder.of(Person.class).fetchGraph("department", "addresses").build());
+			fail();
+		}
+		catch (IllegalStateException e) {
+			// the collection query isn't executed
+			assertEquals(2, SqlStatementRecorder.statements().size());
+		}
+	}
+
+	@Test
+	public void entityGraphIsSharedByExecutorsOfFactory() {
+		final Specification<Person> specification = GenericSpecificationBuilder.of(Person.class).loadGraph("department").build();
+		executor.findAll(specification);
+
+		final EntityManager otherEntityManager = entityManagerFactory.createEntityManager();
+		try {
+			new GenericSpecificationExecutor<>(otherEntityManager, Person.class).findAll(specification);
+
+			final long graphCount = otherEntityManager.getEntityGraphs(Person.class)
+					.stream()
+					.filter(entityGraph -> entityGraph.getName() != null && entityGraph.getName().endsWith("[department]"))
+					.count();
+			assertEquals(1, graphCount);
+		}
+		finally {
+			otherEntityManager.close();
+		}
+	}
+
+	@Test
+	public void countWithoutFetchIsNotDistinct() {
+		final long count = executor.count(GenericSpecificationBuilder.of(Person.class)
+												  .equals("department.name", "Sales", RelationType.TO_ONE)
+												  .build());
+
+		final String sql = singleStatement();
+		assertFalse(sql.contains("count(distinct"));
+		assertEquals(1, SqlStatementRecorder.joinCount(sql));
+		assertEquals(2, count);
+	}
+
+	@Test
+	public void absentFiltersBuildSharedMatchAll() {
+		final Specification<Person> specification = GenericSpecificationBuilder.of(Person.class)
+				.equals("name", null)
+				.like("name", "  ")
+				.in("addresses.city", Collections.emptyList(), RelationType.TO_MANY)
+				.anyOf(b -> b.equals("age", null).like("name", ""))
+				.build();
+		assertSame(GenericSpecificationContainer.matchAll(), specification);
+
+		final List<Person> people = executor.findAll(specification);
+
+		final String sql = singleStatement();
+		assertEquals(0, SqlStatementRecorder.joinCount(sql));
+		assertFalse(sql.contains(" where "));
+		assertEquals(4, people.size());
+	}
+
+	@Test
+	public void emptyValuesOfOtherOperationsAreNotSkipped() {
+		final Specification<Person> specification = GenericSpecificationBuilder.of(Person.class).equals("name", "").build();
+		assertNotSame(GenericSpecificationContainer.matchAll(), specification);
+
+		final List<Person> people = executor.findAll(specification);
+
+		assertTrue(singleStatement().contains(" where "));
+		assertTrue(people.isEmpty());
+	}
+
+	@Test
+	public void skippingIsSwitchedForFollowingCriteria() {
+		final List<Person> people = executor.findAll(GenericSpecificationBuilder.of(Person.class)
+																 .keepEmpty()
+																 .like("name", "")
+																 .skipEmpty()
+																 .in("name", new String[0])
+																 .build());
+
+		final String sql = singleStatement();
+		assertTrue(sql.contains(" like "));
+		assertFalse(sql.contains(" in ("));
+		assertEquals(4, people.size());
+	}
+
+	@Test
+	public void likeValuesOfBuilderAreMatchedLiterally() {
+		assertEquals(2, executor.findAll(GenericSpecificationBuilder.of(Person.class).like("name", "LI").build()).size());
+		assertTrue(singleStatement().contains(" escape "));
+		assertTrue(executor.findAll(GenericSpecificationBuilder.of(Person.class).like("name", "%").build()).isEmpty());
+		assertTrue(executor.findAll(GenericSpecificationBuilder.of(Person.class).like("name", "_li").build()).isEmpty());
+		assertTrue(executor.findAll(GenericSpecificationBuilder.of(Person.class).like("name", "a\\").build()).isEmpty());
+	}
+
+	@Test
+	public void emptyValuesAreSkippedPerOperation() {
+		final List<Person> people = executor.findAll(GenericSpecificationBuilder.of(Person.class)
+																 .skipEmpty(FilterOperation.EQ)
+																 .equals("name", " ")
+																 .keepEmpty(FilterOperation.LIKE)
+																 .like("name", "")
+																 .in("name", Collections.emptyList())
+																 .anyOf(b -> b.equals("name", "").greaterThan("name", ""))
+																 .build());
+
+		final String sql = singleStatement();
+		assertFalse(sql.contains("name=?"));
+		assertTrue(sql.contains(" like "));
+		assertTrue(sql.contains("name>?"));
+		assertFalse(sql.contains(" in ("));
+		assertEquals(4, people.size());
+	}
+
+	@Test
+	public void keptEmptyInMatchesNothing() {
+		final List<Person> people = executor.findAll(GenericSpecificationBuilder.of(Person.class)
+																 .like("name", "")
+																 .keepEmpty()
+																 .in("name", Collections.emptyList())
+																 .build());
+
+		final String sql = singleStatement();
+		assertFalse(sql.contains(" in ("));
+		assertTrue(people.isEmpty());
+	}
+
+	@Test
+	public void commentIsRenderedIntoSql() {
+		executor.findAll(GenericSpecificationBuilder.of(Person.class).equals("name", "Ali").comment("people-by-name").build());
+
+		singleStatement();
+		assertEquals(Collections.singletonList("people-by-name"), SqlStatementRecorder.comments());
+	}
+
+	@Test
+	public void readOnlyEntitiesAreReadOnlyInSession() {
+		final List<Person> people = executor.findAll(GenericSpecificationBuilder.of(Person.class).equals("name", "Ali").readOnly().build());
+
+		singleStatement();
+		assertTrue(entityManager.unwrap(Session.class).isReadOnly(people.get(0)));
+	}
+
+	@Test
+	public void entitiesAreNotReadOnlyByDefault() {
+		final List<Person> people = executor.findAll(GenericSpecificationBuilder.of(Person.class).equals("name", "Ali").build());
+
+		assertFalse(entityManager.unwrap(Session.class).isReadOnly(people.get(0)));
+	}
+
+	@Test
+	public void hintsAndFlushModeAreAppliedToQuery() {
+		final TypedQuery<Person> query = executor.createQuery(GenericSpecificationBuilder.of(Person.class)
+																	  .equals("name", "Ali")
+																	  .fetchSize(100)
+																	  .timeout(2000)
+																	  .cacheable()
+																	  .flushMode(FlushModeType.COMMIT)
+																	  .build(), Sort.unsorted());
+		final Query<?> hibernateQuery = query.unwrap(Query.class);
+
+		assertEquals(Integer.valueOf(100), hibernateQuery.getFetchSize());
+		// Hibernate keeps the timeout in seconds
+		assertEquals(Integer.valueOf(2), hibernateQuery.getTimeout());
+		assertTrue(hibernateQuery.isCacheable());
+		assertEquals(FlushModeType.COMMIT, query.getFlushMode());
+	}
+
+	@Test
+	public void hintsAreAppliedToCountQuery() {
+		executor.count(GenericSpecificationBuilder.of(Person.class).equals("name", "Ali").comment("people-count").build());
+
+		final String sql = singleStatement();
+		assertTrue(sql.startsWith("select count("));
+		assertEquals(Collections.singletonList("people-count"), SqlStatementRecorder.comments());
+	}
+
+	/**
+	 * Detaches the results after each query, like a shared EntityManager does out of a transaction
+	 */
+	private EntityManager detachingEntityManager() {
+		return (EntityManager) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { EntityManager.class }, (proxy, method, args) -> {
+			final Object result = method.invoke(entityManager, args);
+			if (!(result instanceof TypedQuery)) {
+				return result;
+			}
+			return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { TypedQuery.class }, (queryProxy, queryMethod, queryArgs) -> {
+				final Object queryResult = queryMethod.invoke(result, queryArgs);
+				if (queryMethod.getName().equals("getResultList")) {
+					entityManager.clear();
+				}
+				return queryResult == result ? queryProxy : queryResult;
+			});
+		});
+	}
+}
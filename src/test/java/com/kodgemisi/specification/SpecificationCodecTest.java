@@ -0,0 +1,262 @@
+package com.kodgemisi.specification;
+
+import com.kodgemisi.specification.entity.Person;
+import org.junit.Test;
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.FlushModeType;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SpecificationCodecTest extends SqlTestSupport {
+
+	enum Status {
+		ACTIVE, PASSIVE
+	}
+
+	@Test
+	public void valuesOfEachTypeAreDecodedAsIs() {
+		final Timestamp timestamp = new Timestamp(1546300800123L);
+		timestamp.setNanos(123456789);
+
+		final List<Object> values = Arrays.asList("text", "", true, 1, 2L, 1.5d, 2.5f, (short) 3, (byte) 4, 'c', new BigDecimal("1.10"),
+												  new BigInteger("12345678901234567890"), UUID.randomUUID(), Status.PASSIVE, new Date(1546300800123L),
+												  new java.sql.Date(1546300800000L), new Time(36000000L), timestamp, LocalDate.of(2019, 1, 1),
+												  LocalDateTime.of(2019, 1, 1, 10, 0, 0, 1), LocalTime.of(10, 0, 0, 1),
+												  Instant.ofEpochSecond(1546300800L, 123456789), OffsetDateTime.of(2019, 1, 1, 10, 0, 0, 0, ZoneOffset.ofHours(3)),
+												  ZonedDateTime.of(2019, 1, 1, 10, 0, 0, 0, ZoneId.of("Europe/Istanbul")), Arrays.asList(1, 2),
+												  Arrays.asList(Arrays.asList("a", "b"), Collections.emptyList()), Collections.emptyList());
+
+		for (Object value : values) {
+			final GenericSpecificationBuilder<Person> builder = GenericSpecificationBuilder.of(Person.class).keepEmpty().equals("name", value);
+
+			for (GenericSpecificationBuilder<Person> decoded : Arrays.asList(SpecificationCodec.fromBytes(Person.class, SpecificationCodec.toBytes(builder)),
+																			 SpecificationCodec.fromJson(Person.class, SpecificationCodec.toJson(builder)))) {
+				final Object decodedValue = decoded.getFilterCriteriaList().get(0).getValue();
+				assertEquals(value, decodedValue);
+				if (!(value instanceof List)) {
+					assertEquals(value.getClass().getName(), value.getClass(), decodedValue.getClass());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void arraysAreDecodedAsLists() {
+		final GenericSpecificationBuilder<Person> builder = GenericSpecificationBuilder.of(Person.class).in("name", new String[] { "Ali", "Veli" });
+
+		assertEquals(Arrays.asList("Ali", "Veli"),
+					 SpecificationCodec.fromBytes(Person.class, SpecificationCodec.toBytes(builder)).getFilterCriteriaList().get(0).getValue());
+		assertEquals(Arrays.asList("Ali", "Veli"),
+					 SpecificationCodec.fromJson(Person.class, SpecificationCodec.toJson(builder)).getFilterCriteriaList().get(0).getValue());
+	}
+
+	@Test
+	public void groupsHintsAndEntityGraphsAreDecoded() {
+		final String json = SpecificationCodec.toJson(savedSearch());
+
+		assertEquals(json, SpecificationCodec.toJson(SpecificationCodec.fromBytes(Person.class, SpecificationCodec.toBytes(savedSearch()))));
+		assertEquals(json, SpecificationCodec.toJson(SpecificationCodec.fromJson(Person.class, json)));
+	}
+
+	@Test
+	public void decodedSpecificationRendersSameSql() {
+		final GenericSpecificationExecutor<Person> executor = new GenericSpecificationExecutor<>(entityManager, Person.class);
+
+		final List<Person> people = executor.findAll(savedSearch().build());
+		final List<String> statements = new ArrayList<>(SqlStatementRecorder.statements());
+		final List<String> comments = new ArrayList<>(SqlStatementRecorder.comments());
+		assertEquals(Collections.singletonList("Ali"), names(people));
+
+		for (Specification<Person> specification : Arrays.asList(
+				SpecificationCodec.fromBytes(Person.class, SpecificationCodec.toBytes(savedSearch())).build(),
+				SpecificationCodec.fromJson(Person.class, SpecificationCodec.toJson(savedSearch())).build())) {
+			entityManager.clear();
+			SqlStatementRecorder.clear();
+			assertEquals(names(people), names(executor.findAll(specification)));
+			assertEquals(statements, SqlStatementRecorder.statements());
+			assertEquals(comments, SqlStatementRecorder.comments());
+		}
+	}
+
+	@Test
+	public void unsupportedVersionIsRejected() {
+		final byte[] bytes = SpecificationCodec.toBytes(savedSearch());
+		bytes[0] = SpecificationCodec.VERSION + 1;
+		assertMalformed(() -> SpecificationCodec.fromBytes(Person.class, bytes));
+
+		assertMalformed(() -> SpecificationCodec.fromJson(Person.class, "{\"version\":2}"));
+		assertMalformed(() -> SpecificationCodec.fromJson(Person.class, "{\"version\":\"1\"}"));
+		assertMalformed(() -> SpecificationCodec.fromJson(Person.class, "{}"));
+	}
+
+	@Test
+	public void truncatedInputIsRejected() {
+		final byte[] bytes = SpecificationCodec.toBytes(savedSearch());
+		for (int length = 0; length < bytes.length; length++) {
+			final byte[] truncated = Arrays.copyOf(bytes, length);
+			assertMalformed(() -> SpecificationCodec.fromBytes(Person.class, truncated));
+		}
+
+		final String json = SpecificationCodec.toJson(savedSearch());
+		for (int length = 0; length < json.length(); length++) {
+			final String truncated = json.substring(0, length);
+			assertMalformed(() -> SpecificationCodec.fromJson(Person.class, truncated));
+		}
+	}
+
+	@Test
+	public void corruptInputIsRejectedByIllegalArgumentException() {
+		final byte[] bytes = SpecificationCodec.toBytes(savedSearch());
+		for (int i = 0; i < bytes.length; i++) {
+			for (int value : new int[] { 0x00, 0x01, 0x7F, 0x80, 0xFF, bytes[i] + 1 }) {
+				final byte[] corrupt = bytes.clone();
+				corrupt[i] = (byte) value;
+				try {
+					SpecificationCodec.fromBytes(Person.class, corrupt).build();
+				}
+				catch (IllegalArgumentException e) {
+					// expected unless the corrupt byte happens to be valid
+				}
+			}
+		}
+	}
+
+	@Test
+	public void wronglyTypedJsonIsRejected() {
+		final String criterion = "{\"version\":1,\"criteria\":[{\"operation\":\"%s\",\"key\":\"name\",\"relationType\":\"NO_RELATION\","
+				+ "\"conditionType\":\"AND\"%s}]}";
+
+		for (String json : Arrays.asList(
+				String.format(criterion, "JOIN", ",\"joinType\":1"),
+				String.format(criterion, "JOIN", ""),
+				String.format(criterion, "UNKNOWN", ""),
+				String.format(criterion, "EQUAL", ",\"value\":\"Ali\""),
+				String.format(criterion, "EQUAL", ",\"value\":{\"type\":\"UNKNOWN\",\"value\":\"Ali\"}"),
+				String.format(criterion, "EQUAL", ",\"value\":{\"type\":\"INTEGER\"}"),
+				String.format(criterion, "EQUAL", ",\"value\":{\"type\":\"INTEGER\",\"value\":\"one\"}"),
+				String.format(criterion, "EQUAL", ",\"value\":{\"type\":\"ENUM\",\"class\":\"java.lang.String\",\"value\":\"A\"}"),
+				String.format(criterion, "EQUAL", ",\"value\":{\"type\":\"ENUM\",\"class\":\"com.example.Missing\",\"value\":\"A\"}"),
+				String.format(criterion, "EQUAL", ",\"value\":{\"type\":\"ENUM\",\"class\":\"" + Status.class.getName() + "\",\"value\":\"A\"}"),
+				String.format(criterion, "GREATER_THAN", ",\"value\":{\"type\":\"LIST\",\"value\":[]}"),
+				"{\"version\":1,\"criteria\":{}}",
+				"{\"version\":1,\"criteria\":[\"name\"]}",
+				"{\"version\":1,\"groups\":[{\"conditionType\":\"AND\",\"negated\":\"yes\",\"specification\":{}}]}",
+				"{\"version\":1,\"groups\":[{\"conditionType\":\"AND\",\"negated\":false}]}",
+				"{\"version\":1,\"hints\":[]}",
+				"{\"version\":1,\"flushMode\":5}",
+				"{\"version\":1,\"entityGraph\":{\"type\":\"FETCH\",\"paths\":[1]}}",
+				"{\"version\":1,\"entityGraph\":{\"type\":\"FETCH\",\"paths\":\"department\"}}",
+				"[]")) {
+			assertMalformed(() -> SpecificationCodec.fromJson(Person.class, json));
+		}
+	}
+
+	@Test
+	public void deeplyNestedInputIsRejected() {
+		final StringBuilder json = new StringBuilder("{\"version\":1");
+		for (int i = 0; i < SpecificationCodec.MAX_DEPTH + 1; i++) {
+			json.append(",\"groups\":[{\"conditionType\":\"AND\",\"specification\":{\"version\":1");
+		}
+		for (int i = 0; i < SpecificationCodec.MAX_DEPTH + 1; i++) {
+			json.append("}}]");
+		}
+		json.append('}');
+		assertMalformed(() -> SpecificationCodec.fromJson(Person.class, json.toString()));
+
+		final StringBuilder array = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			array.append('[');
+		}
+		assertMalformed(() -> SpecificationCodec.fromJson(Person.class, array.toString()));
+
+		// version, no criteria, a group of AND which isn't negated and so on
+		final ByteArrayOutputStream groups = new ByteArrayOutputStream();
+		groups.write(SpecificationCodec.VERSION);
+		for (int i = 0; i < 100000; i++) {
+			groups.write(0);
+			groups.write(1);
+			groups.write(1);
+			groups.write(0);
+		}
+		assertMalformed(() -> SpecificationCodec.fromBytes(Person.class, groups.toByteArray()));
+
+		// version, a criteria of EQUAL on "a" whose value is a list of a list and so on
+		final ByteArrayOutputStream lists = new ByteArrayOutputStream();
+		lists.write(SpecificationCodec.VERSION);
+		lists.write(1);
+		final byte[] criteria = { 3, 1, 'a', 1, 1, 0 };
+		lists.write(criteria, 0, criteria.length);
+		for (int i = 0; i < 100000; i++) {
+			lists.write(21);
+			lists.write(1);
+		}
+		assertMalformed(() -> SpecificationCodec.fromBytes(Person.class, lists.toByteArray()));
+	}
+
+	@Test
+	public void nestingDeeperThanLimitIsNotSerialized() {
+		final GenericSpecificationBuilder<Person> builder = GenericSpecificationBuilder.of(Person.class);
+		GenericSpecificationBuilder<Person> group = builder;
+		for (int i = 0; i < SpecificationCodec.MAX_DEPTH + 1; i++) {
+			final List<GenericSpecificationBuilder<Person>> nested = new ArrayList<>();
+			group.allOf(b -> nested.add(b.equals("name", "Ali")));
+			group = nested.get(0);
+		}
+
+		assertMalformed(() -> SpecificationCodec.toBytes(builder));
+		assertMalformed(() -> SpecificationCodec.toJson(builder));
+	}
+
+	@Test
+	public void encodingIsStable() {
+		assertArrayEquals(SpecificationCodec.toBytes(savedSearch()), SpecificationCodec.toBytes(savedSearch()));
+	}
+
+	private static GenericSpecificationBuilder<Person> savedSearch() {
+		return GenericSpecificationBuilder.of(Person.class)
+				.greaterThan("age", 20)
+				.anyOf(b -> b.equals("addresses.type", "home", RelationType.TO_MANY)
+						.not(n -> n.equals("department.name", "Sales", RelationType.TO_ONE)))
+				.not(b -> b.in("name", Arrays.asList("Veli", "Fatma")))
+				.or()
+				.equals("name", "Ali")
+				.equals("name", "Ayse")
+				.and()
+				.comment("saved search")
+				.timeout(1000)
+				.flushMode(FlushModeType.COMMIT)
+				.fetchGraph("department", "addresses");
+	}
+
+	private static void assertMalformed(Runnable runnable) {
+		try {
+			runnable.run();
+			fail("IllegalArgumentException is expected");
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,210 @@
+package com.kodgemisi.specification;
+
+import com.kodgemisi.specification.entity.Person;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SpecificationMatcherTest extends SqlTestSupport {
+
+	private final List<Specification<Person>> specifications = new ArrayList<>();
+
+	private final List<List<String>> expectedNames = new ArrayList<>();
+
+	private SpecificationMatcher<Person> matcher;
+
+	@Before
+	public void setUp() {
+		matcher = new SpecificationMatcher<>(entityManager, Person.class);
+
+		expect(GenericSpecificationBuilder.of(Person.class).equals("name", "Ali"), "Ali");
+		expect(GenericSpecificationBuilder.of(Person.class).greaterThan("age", 26), "Ali", "Veli");
+		expect(GenericSpecificationBuilder.of(Person.class).isNull("age"), "Fatma");
+		// unknown for null age, so Fatma doesn't match
+		expect(GenericSpecificationBuilder.of(Person.class).not(b -> b.greaterThan("age", 26)), "Ayse");
+		expect(GenericSpecificationBuilder.of(Person.class).like("name", "l"), "Ali", "Veli");
+		expect(GenericSpecificationBuilder.of(Person.class).equals("department.name", "IT", RelationType.TO_ONE), "Fatma", "Veli");
+		expect(GenericSpecificationBuilder.of(Person.class).equals("addresses.city", "Istanbul", RelationType.TO_MANY), "Ali", "Veli");
+		expect(GenericSpecificationBuilder.of(Person.class)
+					   .equals("addresses.city", "Istanbul", RelationType.TO_MANY)
+					   .equals("addresses.type", "home", RelationType.TO_MANY), "Ali");
+		expect(GenericSpecificationBuilder.of(Person.class)
+					   .allOf(b -> b.equals("addresses.city", "Istanbul", RelationType.TO_MANY).equals("addresses.type", "home", RelationType.TO_MANY)),
+			   "Ali");
+		expect(GenericSpecificationBuilder.of(Person.class).not(b -> b.equals("addresses.city", "Istanbul", RelationType.TO_MANY)), "Ayse",
+			   "Fatma");
+		expect(GenericSpecificationBuilder.of(Person.class).join("addresses"), "Ali", "Fatma", "Veli");
+		expect(GenericSpecificationBuilder.of(Person.class)
+					   .custom((root, query, cb) -> cb.equal(root.join("addresses").get("type"), "home")), "Ali", "Fatma");
+	}
+
+	@Test
+	public void specificationsAreMatchedBySingleQuery() {
+		final List<Set<Long>> matches = matcher.matchIds(specifications, ids(findPeople()));
+
+		final String sql = singleStatement();
+		assertMatches(toNames(matches));
+		// each specification joining a relation joins it in its own subquery, so the rows of the query aren't multiplied
+		assertEquals(0, SqlStatementRecorder.joinCount(sql.substring(sql.lastIndexOf(" from "))));
+		assertEquals(8, SqlStatementRecorder.joinCount(sql));
+		assertEquals(7, sql.split("exists \\(select").length - 1);
+	}
+
+	@Test
+	public void specificationsAreMatchedInChunks() {
+		final List<Long> ids = ids(findPeople());
+
+		matcher.specificationChunkSize(5).idChunkSize(3);
+		assertMatches(toNames(matcher.matchIds(specifications, ids)));
+		assertEquals(6, SqlStatementRecorder.statements().size());
+
+		SqlStatementRecorder.clear();
+		matcher.specificationChunkSize(1).idChunkSize(1);
+		assertMatches(toNames(matcher.matchIds(specifications, ids)));
+		assertEquals(specifications.size() * ids.size(), SqlStatementRecorder.statements().size());
+	}
+
+	@Test
+	public void entitiesAreMatchedByDatabaseByDefault() {
+		final List<Person> people = findPeople();
+
+		final List<List<Person>> matches = matcher.match(specifications, people);
+
+		singleStatement();
+		assertMatches(matches.stream().map(SqlTestSupport::names).collect(Collectors.toList()));
+	}
+
+	@Test
+	public void matchingInMemoryAgreesWithDatabase() {
+		final List<Person> people = findPeople();
+		final List<List<String>> databaseMatches = toNames(matcher.matchIds(specifications, ids(people)));
+		SqlStatementRecorder.clear();
+		statistics.clear();
+
+		final List<List<Person>> matches = matcher.inMemory(true).match(specifications, people);
+
+		assertEquals(databaseMatches, matches.stream().map(SqlTestSupport::names).collect(Collectors.toList()));
+		assertMatches(databaseMatches);
+		// only the custom specification is queried
+		final String sql = singleStatement();
+		assertEquals(1, SqlStatementRecorder.joinCount(sql));
+	}
+
+	@Test
+	public void relationsWhichAreNotLoadedAreMatchedByDatabase() {
+		final List<Person> people = entityManager.createQuery("select p from Person p", Person.class).getResultList();
+		SqlStatementRecorder.clear();
+		statistics.clear();
+
+		final List<List<Person>> matches = matcher.inMemory(true).match(specifications, people);
+
+		assertMatches(matches.stream().map(SqlTestSupport::names).collect(Collectors.toList()));
+		singleStatement();
+		assertEquals(0, statistics.getCollectionFetchCount());
+		assertEquals(0, statistics.getEntityFetchCount());
+		for (Person person : people) {
+			assertFalse(entityManagerFactory.getPersistenceUnitUtil().isLoaded(person, "addresses"));
+		}
+	}
+
+	@Test
+	public void likeIsLowerCasedRegardlessOfDefaultLocale() {
+		final Locale defaultLocale = Locale.getDefault();
+		Locale.setDefault(new Locale("tr", "TR"));
+		try {
+			final List<Specification<Person>> likes = Collections.singletonList(
+					GenericSpecificationBuilder.of(Person.class).like("name", "LI").build());
+			final List<Person> people = findPeople();
+
+			assertEquals(Arrays.asList("Ali", "Veli"), toNames(matcher.matchIds(likes, ids(people))).get(0));
+			assertEquals(Arrays.asList("Ali", "Veli"), names(matcher.inMemory(true).match(likes, people).get(0)));
+		}
+		finally {
+			Locale.setDefault(defaultLocale);
+		}
+	}
+
+	@Test
+	public void comparisonsOfStringsAreMatchedByDatabase() {
+		final List<Specification<Person>> comparisons = Collections.singletonList(
+				GenericSpecificationBuilder.of(Person.class).greaterThan("name", "B").build());
+		final List<Person> people = findPeople();
+		SqlStatementRecorder.clear();
+
+		final List<Person> matches = matcher.inMemory(true).match(comparisons, people).get(0);
+
+		assertEquals(Arrays.asList("Fatma", "Veli"), names(matches));
+		assertTrue(singleStatement().contains("case when"));
+	}
+
+	@Test
+	public void repeatedSpecificationsGetResultEach() {
+		final Specification<Person> matchAll = GenericSpecificationBuilder.of(Person.class).equals("name", null).build();
+		final Specification<Person> otherMatchAll = GenericSpecificationBuilder.of(Person.class).like("name", " ").build();
+		assertSame(matchAll, otherMatchAll);
+		final List<Specification<Person>> repeated = Arrays.asList(matchAll, specifications.get(0), otherMatchAll);
+		final List<Person> people = findPeople();
+
+		final List<Set<Long>> matchingIds = matcher.matchIds(repeated, ids(people));
+
+		// the same instance is evaluated once
+		assertEquals(2, singleStatement().split("case when").length - 1);
+		assertEquals(Arrays.asList(4, 1, 4), matchingIds.stream().map(Set::size).collect(Collectors.toList()));
+		assertNotSame(matchingIds.get(0), matchingIds.get(2));
+
+		for (boolean inMemory : new boolean[] { false, true }) {
+			final List<List<Person>> matches = matcher.inMemory(inMemory).match(repeated, people);
+			assertEquals(Arrays.asList(4, 1, 4), matches.stream().map(List::size).collect(Collectors.toList()));
+			assertNotSame(matches.get(0), matches.get(2));
+		}
+	}
+
+	private void expect(GenericSpecificationBuilder<Person> builder, String... names) {
+		specifications.add(builder.build());
+		expectedNames.add(Arrays.asList(names));
+	}
+
+	private void assertMatches(List<List<String>> actualNames) {
+		assertEquals(expectedNames.size(), actualNames.size());
+		for (int i = 0; i < expectedNames.size(); i++) {
+			assertEquals("specification " + i, expectedNames.get(i), actualNames.get(i));
+		}
+	}
+
+	/**
+	 * Loads all people with their departments and addresses, clearing the recorded statements afterwards
+	 */
+	private List<Person> findPeople() {
+		final List<Person> people = new GenericSpecificationExecutor<>(entityManager, Person.class).findAll(
+				GenericSpecificationBuilder.of(Person.class).fetchGraph("department", "addresses").build());
+		SqlStatementRecorder.clear();
+		statistics.clear();
+		return people;
+	}
+
+	private static List<Long> ids(List<Person> people) {
+		return people.stream().map(Person::getId).collect(Collectors.toList());
+	}
+
+	private List<List<String>> toNames(List<Set<Long>> matches) {
+		final List<List<String>> names = new ArrayList<>();
+		for (Set<Long> ids : matches) {
+			names.add(ids.stream().map(id -> entityManager.find(Person.class, id).getName()).sorted().collect(Collectors.toList()));
+		}
+		return names;
+	}
+}
@@ -0,0 +1,106 @@
+package com.kodgemisi.specification;
+
+import com.kodgemisi.specification.entity.Person;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SpecificationParameterParserTest extends SqlTestSupport {
+
+	private GenericSpecificationExecutor<Person> executor;
+
+	@Before
+	public void setUp() {
+		executor = new GenericSpecificationExecutor<>(entityManager, Person.class);
+	}
+
+	@Test
+	public void parsedParametersAreExecutedBySingleQuery() {
+		final Map<String, String> parameters = new HashMap<>();
+		parameters.put("age.gte", "30");
+		parameters.put("addresses.city.in", "Istanbul,Izmir");
+		parameters.put("page", "0");
+
+		final List<Person> people = executor.findAll(parser().filterable("age", "addresses.city").parse(parameters).build());
+
+		final String sql = singleStatement();
+		assertEquals(1, SqlStatementRecorder.joinCount(sql));
+		assertEquals(2, people.size());
+	}
+
+	@Test
+	public void likeIsNotAllowedByDefault() {
+		assertRejected(parser().filterable("name"), "name.like", "a");
+	}
+
+	@Test
+	public void onlyAllowedOperationsAreAccepted() {
+		final SpecificationParameterParser<Person> parser = parser().filterable("age", FilterOperation.EQ, FilterOperation.IN);
+
+		assertEquals(1, executor.findAll(parser.parse(Collections.singletonMap("age.in", "30,31")).build()).size());
+		assertRejected(parser, "age.gte", "30");
+		assertRejected(parser, "age.null", "true");
+	}
+
+	@Test
+	public void likeWildcardsAreMatchedLiterally() {
+		final SpecificationParameterParser<Person> parser = parser().filterable("name", FilterOperation.LIKE);
+
+		assertEquals(1, executor.findAll(parser.parse(Collections.singletonMap("name.like", "ys")).build()).size());
+		assertTrue(SqlStatementRecorder.statements().get(0).contains(" escape "));
+		assertEquals(0, executor.findAll(parser.parse(Collections.singletonMap("name.like", "%")).build()).size());
+		assertEquals(0, executor.findAll(parser.parse(Collections.singletonMap("name.like", "_ys")).build()).size());
+		assertEquals(0, executor.findAll(parser.parse(Collections.singletonMap("name.like", "\\")).build()).size());
+	}
+
+	@Test
+	public void operationsAndConverterCanBeCombined() {
+		final SpecificationParameterParser<Person> parser = parser()
+				.filterable("name", value -> value.toUpperCase().charAt(0) + value.substring(1).toLowerCase())
+				.filterable("name", FilterOperation.EQ);
+
+		assertEquals(1, executor.findAll(parser.parse(Collections.singletonMap("name", "aLI")).build()).size());
+		assertRejected(parser, "name.in", "Ali");
+	}
+
+	@Test
+	public void schemaIsCachedPerMetamodel() {
+		assertSame(FieldSchema.of(entityManagerFactory.getMetamodel(), Person.class), FieldSchema.of(entityManager.getMetamodel(), Person.class));
+
+		final EntityManagerFactory otherEntityManagerFactory = Persistence.createEntityManagerFactory("specification-test",
+				Collections.singletonMap("javax.persistence.jdbc.url", "jdbc:h2:mem:specification-schema-test"));
+		try {
+			assertNotSame(FieldSchema.of(entityManagerFactory.getMetamodel(), Person.class),
+						  FieldSchema.of(otherEntityManagerFactory.getMetamodel(), Person.class));
+		}
+		finally {
+			otherEntityManagerFactory.close();
+		}
+	}
+
+	private SpecificationParameterParser<Person> parser() {
+		return SpecificationParameterParser.of(entityManagerFactory.getMetamodel(), Person.class);
+	}
+
+	private static void assertRejected(SpecificationParameterParser<Person> parser, String name, String value) {
+		try {
+			parser.parse(Collections.singletonMap(name, value));
+			fail(name + " should be rejected");
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package com.kodgemisi.specification;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Records the SQL statements rendered by Hibernate, registered by {@code hibernate.session_factory.statement_inspector}
+ */
+public class SqlStatementRecorder implements StatementInspector {
+
+	private static final Pattern JOIN_PATTERN = Pattern.compile("\\bjoin\\b");
+
+	// comments rendered by hibernate.use_sql_comments, they are recorded separately since they may contain HQL
+	private static final Pattern COMMENT_PATTERN = Pattern.compile("^\\s*/\\*(.*?)\\*/\\s*", Pattern.DOTALL);
+
+	private static final List<String> STATEMENTS = Collections.synchronizedList(new ArrayList<>());
+
+	private static final List<String> COMMENTS = Collections.synchronizedList(new ArrayList<>());
+
+	@Override
+	public String inspect(String sql) {
+		final Matcher matcher = COMMENT_PATTERN.matcher(sql);
+		if (matcher.find()) {
+			COMMENTS.add(matcher.group(1).trim());
+			STATEMENTS.add(sql.substring(matcher.end()).toLowerCase(Locale.ENGLISH));
+		}
+		else {
+			COMMENTS.add(null);
+			STATEMENTS.add(sql.toLowerCase(Locale.ENGLISH));
+		}
+		return sql;
+	}
+
+	static void clear() {
+		synchronized (STATEMENTS) {
+			STATEMENTS.clear();
+			COMMENTS.clear();
+		}
+	}
+
+	/**
+	 * @return lower case statements without comments
+	 */
+	static List<String> statements() {
+		return new ArrayList<>(STATEMENTS);
+	}
+
+	/**
+	 * @return comments of the statements, {@code null} for statements without comment
+	 */
+	static List<String> comments() {
+		return new ArrayList<>(COMMENTS);
+	}
+
+	static int joinCount(String sql) {
+		final Matcher matcher = JOIN_PATTERN.matcher(sql);
+		int count = 0;
+		while (matcher.find()) {
+			count++;
+		}
+		return count;
+	}
+
+	static boolean isDistinct(String sql) {
+		return sql.startsWith("select distinct");
+	}
+}
@@ -0,0 +1,94 @@
+package com.kodgemisi.specification;
+
+import com.kodgemisi.specification.entity.Department;
+import com.kodgemisi.specification.entity.Person;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Creates the H2 database of the {@code specification-test} persistence unit with the same data for each test class
+ * and clears the recorded statements and statistics before each test.
+ *
+ * <ul>
+ * <li>Ali, 30, Sales: Istanbul (home), Ankara (work)</li>
+ * <li>Veli, 40, IT: Istanbul (work)</li>
+ * <li>Ayse, 25, Sales: no address</li>
+ * <li>Fatma, no age, IT: Izmir (home)</li>
+ * </ul>
+ */
+public abstract class SqlTestSupport {
+
+	static EntityManagerFactory entityManagerFactory;
+
+	static Statistics statistics;
+
+	EntityManager entityManager;
+
+	@BeforeClass
+	public static void setUpPersistence() {
+		entityManagerFactory = Persistence.createEntityManagerFactory("specification-test");
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+		final EntityManager entityManager = entityManagerFactory.createEntityManager();
+		entityManager.getTransaction().begin();
+
+		final Department sales = new Department("Sales");
+		final Department it = new Department("IT");
+		entityManager.persist(sales);
+		entityManager.persist(it);
+
+		entityManager.persist(new Person("Ali", 30, sales).address("Istanbul", "home").address("Ankara", "work"));
+		entityManager.persist(new Person("Veli", 40, it).address("Istanbul", "work"));
+		entityManager.persist(new Person("Ayse", 25, sales));
+		entityManager.persist(new Person("Fatma", null, it).address("Izmir", "home"));
+
+		entityManager.getTransaction().commit();
+		entityManager.close();
+	}
+
+	@AfterClass
+	public static void tearDownPersistence() {
+		// null in case the persistence unit couldn't be created, so that the actual error isn't hidden
+		if (entityManagerFactory != null) {
+			entityManagerFactory.close();
+			entityManagerFactory = null;
+		}
+	}
+
+	@Before
+	public void openEntityManager() {
+		entityManager = entityManagerFactory.createEntityManager();
+		statistics.clear();
+		SqlStatementRecorder.clear();
+	}
+
+	@After
+	public void closeEntityManager() {
+		if (entityManager != null) {
+			entityManager.close();
+		}
+	}
+
+	String singleStatement() {
+		final List<String> statements = SqlStatementRecorder.statements();
+		assertEquals(statements.toString(), 1, statements.size());
+		assertEquals(1, statistics.getPrepareStatementCount());
+		return statements.get(0);
+	}
+
+	static List<String> names(List<Person> people) {
+		return people.stream().map(Person::getName).sorted().collect(Collectors.toList());
+	}
+}
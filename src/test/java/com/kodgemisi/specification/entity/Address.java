@@ -0,0 +1,35 @@
+package com.kodgemisi.specification.entity;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+public class Address {
+
+	@Id
+	@GeneratedValue
+	private Long id;
+
+	private String city;
+
+	private String type;
+
+	@ManyToOne(fetch = FetchType.LAZY)
+	private Person person;
+
+	public Address(String city, String type, Person person) {
+		this.city = city;
+		this.type = type;
+		this.person = person;
+	}
+}
@@ -0,0 +1,26 @@
+package com.kodgemisi.specification.entity;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+public class Department {
+
+	@Id
+	@GeneratedValue
+	private Long id;
+
+	private String name;
+
+	public Department(String name) {
+		this.name = name;
+	}
+}
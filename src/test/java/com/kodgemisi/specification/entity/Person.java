@@ -0,0 +1,47 @@
+package com.kodgemisi.specification.entity;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.CascadeType;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+public class Person {
+
+	@Id
+	@GeneratedValue
+	private Long id;
+
+	private String name;
+
+	private Integer age;
+
+	@ManyToOne(fetch = FetchType.LAZY)
+	private Department department;
+
+	@OneToMany(mappedBy = "person", cascade = CascadeType.ALL)
+	private List<Address> addresses = new ArrayList<>();
+
+	public Person(String name, Integer age, Department department) {
+		this.name = name;
+		this.age = age;
+		this.department = department;
+	}
+
+	public Person address(String city, String type) {
+		addresses.add(new Address(city, type, this));
+		return this;
+	}
+}